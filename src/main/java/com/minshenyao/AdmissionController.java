@@ -0,0 +1,332 @@
+package com.minshenyao;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.net.ServerSocketFactory;
+
+/**
+ * 所有监听器共享的准入控制，按来源 IP 使用令牌桶限流
+ * <p>
+ * 令牌桶保存在分段的哈希表中，每段一把锁；空闲超时的桶会被清理。各来源的拒绝次数单独保存在
+ * 容量固定的排行中（Space-Saving 算法），来源地址不断变化的洪泛也不会让内存无限增长。
+ * RMI 和 LDAP 在 accept 时拒绝，HTTP 在请求分发给处理器前拒绝。
+ * <p>
+ * 默认关闭：繁忙或位于 NAT 后的目标可能在短时间内多次回连，需要时通过界面或 --rate-limit 开启。
+ * 每个来源第一次被拒绝时记录一条日志。
+ */
+public final class AdmissionController {
+    private static final Logger LOGGER = Logger.getLogger(AdmissionController.class.getName());
+    private static final int STRIPES = 16;
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int TOP_SOURCES = 32;
+
+    private static final Stripe[] stripes = new Stripe[STRIPES];
+    private static final AtomicLong totalRejected = new AtomicLong();
+    private static final TopRejected topRejected = new TopRejected(TOP_SOURCES);
+    public static final double DEFAULT_RATE = 50;
+    public static final double DEFAULT_BURST = 100;
+    private static volatile double ratePerSecond = DEFAULT_RATE;
+    private static volatile double burst = DEFAULT_BURST;
+    private static volatile boolean enabled;
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private AdmissionController() {
+    }
+
+    /**
+     * 设置每个来源的限流参数
+     * @param rate 每秒补充的令牌数
+     * @param capacity 令牌桶容量（允许的突发连接数）
+     */
+    public static void configure(double rate, double capacity) {
+        ratePerSecond = rate;
+        burst = capacity;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static double getRate() {
+        return ratePerSecond;
+    }
+
+    public static double getBurst() {
+        return burst;
+    }
+
+    /**
+     * 尝试为来源地址获取一个令牌
+     * @return 是否允许该连接/请求
+     */
+    public static boolean tryAcquire(InetAddress address) {
+        if (!enabled) {
+            return true;
+        }
+        long now = System.nanoTime();
+        Stripe stripe = stripes[(address.hashCode() & 0x7fffffff) % STRIPES];
+        boolean firstRejection;
+        synchronized (stripe) {
+            stripe.sweepIfDue(now);
+            Bucket bucket = stripe.buckets.get(address);
+            if (bucket == null) {
+                bucket = new Bucket(burst, now);
+                stripe.buckets.put(address, bucket);
+            }
+            if (bucket.tryTake(now)) {
+                return true;
+            }
+            firstRejection = !bucket.rejected;
+            bucket.rejected = true;
+        }
+        totalRejected.incrementAndGet();
+        topRejected.record(address);
+        if (firstRejection) {
+            LOGGER.warning("来源 " + address.getHostAddress() + " 超过限流（每秒 " + ratePerSecond
+                    + "，突发 " + burst + "），连接被拒绝；该来源后续的拒绝只计数不再记录");
+        }
+        return false;
+    }
+
+    public static long getTotalRejected() {
+        return totalRejected.get();
+    }
+
+    /**
+     * 从会话快照恢复累计拒绝次数
+     */
+    public static void restoreTotalRejected(long value) {
+        totalRejected.set(value);
+    }
+
+    /**
+     * 获取被拒绝次数最多的来源，按次数降序
+     * <p>
+     * 最多保留 {@value #TOP_SOURCES} 个来源；来源数超过容量时次数为上界估计。
+     */
+    public static Map<String, Long> getRejectedCounts() {
+        return topRejected.snapshot();
+    }
+
+    /**
+     * 创建在 accept 时执行准入控制的 ServerSocketFactory
+     * <p>
+     * 创建的 ServerSocket 启用 SO_REUSEADDR，切换端口后可立即重新绑定处于 TIME_WAIT 的旧端口；
+     * 放行的连接交给 connections 跟踪，以便停止时排空。
+     */
+    static ServerSocketFactory serverSocketFactory(ConnectionTracker connections) {
+        return new AdmissionServerSocketFactory(connections);
+    }
+
+    /**
+     * 创建在 HTTP 请求进入处理器前执行准入控制的过滤器
+     */
+    public static Filter httpFilter() {
+        return new AdmissionFilter();
+    }
+
+    static String summary() {
+        long total = totalRejected.get();
+        if (total == 0) {
+            return enabled ? "限流拒绝: 0" : "限流: 未启用";
+        }
+        StringBuilder sb = new StringBuilder("限流拒绝: ").append(total);
+        int shown = 0;
+        for (Map.Entry<String, Long> e : getRejectedCounts().entrySet()) {
+            sb.append(shown == 0 ? "  |  " : ", ").append(e.getKey()).append(' ').append(e.getValue());
+            if (++shown == 3) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Stripe {
+        final HashMap<InetAddress, Bucket> buckets = new HashMap<>();
+        long nextSweep = System.nanoTime() + SWEEP_INTERVAL_NANOS;
+
+        void sweepIfDue(long now) {
+            if (now - nextSweep < 0) {
+                return;
+            }
+            nextSweep = now + SWEEP_INTERVAL_NANOS;
+            Iterator<Bucket> it = buckets.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().lastRefill > IDLE_NANOS) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static final class Bucket {
+        double tokens;
+        long lastRefill;
+        boolean rejected;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        boolean tryTake(long now) {
+            double capacity = burst;
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerSecond / 1_000_000_000.0);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 拒绝次数排行：容量满时新来源替换次数最少的条目并继承其次数，热点来源的次数始终不会被低估
+     */
+    private static final class TopRejected {
+        private final int capacity;
+        private final HashMap<InetAddress, long[]> counts = new HashMap<>();
+
+        TopRejected(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void record(InetAddress address) {
+            long[] count = counts.get(address);
+            if (count != null) {
+                count[0]++;
+                return;
+            }
+            long inherited = 0;
+            if (counts.size() >= capacity) {
+                Map.Entry<InetAddress, long[]> min = null;
+                for (Map.Entry<InetAddress, long[]> e : counts.entrySet()) {
+                    if (min == null || e.getValue()[0] < min.getValue()[0]) {
+                        min = e;
+                    }
+                }
+                inherited = min.getValue()[0];
+                counts.remove(min.getKey());
+            }
+            counts.put(address, new long[]{inherited + 1});
+        }
+
+        synchronized Map<String, Long> snapshot() {
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.size());
+            for (Map.Entry<InetAddress, long[]> e : counts.entrySet()) {
+                entries.add(new AbstractMap.SimpleEntry<>(e.getKey().getHostAddress(), e.getValue()[0]));
+            }
+            entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> e : entries) {
+                result.put(e.getKey(), e.getValue());
+            }
+            return result;
+        }
+    }
+
+    private static final class AdmissionServerSocketFactory extends ServerSocketFactory {
+        private final ConnectionTracker connections;
+
+        AdmissionServerSocketFactory(ConnectionTracker connections) {
+            this.connections = connections;
+        }
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new AdmissionServerSocket(connections);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            ServerSocket socket = new AdmissionServerSocket(connections);
+            socket.bind(new InetSocketAddress(port));
+            return socket;
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            ServerSocket socket = new AdmissionServerSocket(connections);
+            socket.bind(new InetSocketAddress(port), backlog);
+            return socket;
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress bindAddress) throws IOException {
+            ServerSocket socket = new AdmissionServerSocket(connections);
+            socket.bind(new InetSocketAddress(bindAddress, port), backlog);
+            return socket;
+        }
+    }
+
+    private static final class AdmissionServerSocket extends ServerSocket {
+        private final ConnectionTracker connections;
+
+        AdmissionServerSocket(ConnectionTracker connections) throws IOException {
+            super();
+            this.connections = connections;
+            setReuseAddress(true);
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            while (true) {
+                Socket socket = connections.newSocket();
+                implAccept(socket);
+                if (tryAcquire(socket.getInetAddress())) {
+                    connections.opened(socket);
+                    return socket;
+                }
+                try {
+                    // 直接发送 RST，避免被拒连接堆积在 TIME_WAIT
+                    socket.setSoLinger(true, 0);
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static final class AdmissionFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (tryAcquire(exchange.getRemoteAddress().getAddress())) {
+                chain.doFilter(exchange);
+            } else {
+                exchange.sendResponseHeaders(429, -1);
+                exchange.close();
+            }
+        }
+
+        @Override
+        public String description() {
+            return "按来源 IP 限流";
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.minshenyao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * 共享的分级缓冲池，提供可复用的堆缓冲（byte[]）和直接缓冲（ByteBuffer）
+ * <p>
+ * 缓冲按 4 KB / 16 KB / 64 KB 三个规格分级，申请时向上取整到规格大小，超过最大规格的直接分配且不回收。
+ * 每个平台线程为每个规格保留 {@value #THREAD_CACHE_DEPTH} 个缓冲，无需加锁；线程缓存满或在虚拟线程上时
+ * 归还到各规格的共享栈，共享栈满后丢弃交给 GC。
+ * <p>
+ * 借出的缓冲必须且只能归还一次，归还后不得再使用。
+ */
+public final class BufferPool {
+    public static final int SMALL = 4 << 10;
+    public static final int MEDIUM = 16 << 10;
+    public static final int LARGE = 64 << 10;
+    private static final int[] CLASS_SIZES = {SMALL, MEDIUM, LARGE};
+    private static final int THREAD_CACHE_DEPTH = 2;
+    private static final int SHARED_CAPACITY = 64;
+
+    private static final Arena<byte[]> heap = new Arena<>("堆", byte[]::new, buffer -> buffer.length);
+    private static final Arena<ByteBuffer> direct = new Arena<>("直接", ByteBuffer::allocateDirect, ByteBuffer::capacity);
+
+    private BufferPool() {
+    }
+
+    /**
+     * 借出至少 size 字节的堆缓冲
+     */
+    public static byte[] acquireHeap(int size) {
+        return heap.acquire(size);
+    }
+
+    public static void release(byte[] buffer) {
+        heap.release(buffer);
+    }
+
+    /**
+     * 借出至少 size 字节的直接缓冲，position 为 0，limit 为容量
+     */
+    public static ByteBuffer acquireDirect(int size) {
+        ByteBuffer buffer = direct.acquire(size);
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    public static void release(ByteBuffer buffer) {
+        direct.release(buffer);
+    }
+
+    public static Stats heapStats() {
+        return heap.stats();
+    }
+
+    public static Stats directStats() {
+        return direct.stats();
+    }
+
+    static String summary() {
+        return "缓冲池: " + heap.stats() + "  |  " + direct.stats();
+    }
+
+    /**
+     * 用池中缓冲包装输入流，关闭时归还缓冲并关闭底层流
+     */
+    public static InputStream inputStream(InputStream in, int size) {
+        return new PooledInputStream(in, acquireHeap(size));
+    }
+
+    /**
+     * 用池中缓冲包装输出流，关闭时写出剩余数据、归还缓冲并关闭底层流
+     */
+    public static OutputStream outputStream(OutputStream out, int size) {
+        return new PooledOutputStream(out, acquireHeap(size));
+    }
+
+    private static int sizeClass(int size) {
+        for (int i = 0; i < CLASS_SIZES.length; i++) {
+            if (size <= CLASS_SIZES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 缓冲池统计快照
+     */
+    public static final class Stats {
+        private final String kind;
+        private final long acquired;
+        private final long hits;
+        private final long outstanding;
+
+        Stats(String kind, long acquired, long hits, long outstanding) {
+            this.kind = kind;
+            this.acquired = acquired;
+            this.hits = hits;
+            this.outstanding = outstanding;
+        }
+
+        public long getAcquired() {
+            return acquired;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * 已借出尚未归还的缓冲数
+         */
+        public long getOutstanding() {
+            return outstanding;
+        }
+
+        /**
+         * 命中率（0-1），尚无借出时返回 1
+         */
+        public double hitRate() {
+            return acquired == 0 ? 1 : (double) hits / acquired;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s 命中 %.1f%%（%d 次） 借出 %d", kind, hitRate() * 100, acquired, outstanding);
+        }
+    }
+
+    /**
+     * 一种缓冲（堆或直接）的各级线程缓存与共享栈
+     */
+    private static final class Arena<T> {
+        private final String kind;
+        private final IntFunction<T> allocator;
+        private final ToIntFunction<T> capacity;
+        private final SharedStack[] shared = new SharedStack[CLASS_SIZES.length];
+        private final ThreadLocal<Object[][]> threadCache;
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder released = new LongAdder();
+
+        Arena(String kind, IntFunction<T> allocator, ToIntFunction<T> capacity) {
+            this.kind = kind;
+            this.allocator = allocator;
+            this.capacity = capacity;
+            for (int i = 0; i < shared.length; i++) {
+                shared[i] = new SharedStack();
+            }
+            this.threadCache = ThreadLocal.withInitial(() -> new Object[CLASS_SIZES.length][THREAD_CACHE_DEPTH]);
+        }
+
+        @SuppressWarnings("unchecked")
+        T acquire(int size) {
+            acquired.increment();
+            int index = sizeClass(size);
+            if (index < 0) {
+                return allocator.apply(size);
+            }
+            if (!ServiceExecutors.onVirtualThread()) {
+                Object[] cache = threadCache.get()[index];
+                for (int i = cache.length - 1; i >= 0; i--) {
+                    if (cache[i] != null) {
+                        Object buffer = cache[i];
+                        cache[i] = null;
+                        hits.increment();
+                        return (T) buffer;
+                    }
+                }
+            }
+            Object buffer = shared[index].pop();
+            if (buffer != null) {
+                hits.increment();
+                return (T) buffer;
+            }
+            return allocator.apply(CLASS_SIZES[index]);
+        }
+
+        void release(T buffer) {
+            released.increment();
+            int length = capacity.applyAsInt(buffer);
+            int index = sizeClass(length);
+            if (index < 0 || CLASS_SIZES[index] != length) {
+                return;
+            }
+            if (!ServiceExecutors.onVirtualThread()) {
+                Object[] cache = threadCache.get()[index];
+                for (int i = 0; i < cache.length; i++) {
+                    if (cache[i] == null) {
+                        cache[i] = buffer;
+                        return;
+                    }
+                }
+            }
+            shared[index].push(buffer);
+        }
+
+        Stats stats() {
+            long acquiredCount = acquired.sum();
+            return new Stats(kind, acquiredCount, hits.sum(), acquiredCount - released.sum());
+        }
+    }
+
+    private static final class SharedStack {
+        private final Object[] slots = new Object[SHARED_CAPACITY];
+        private int size;
+
+        synchronized Object pop() {
+            if (size == 0) {
+                return null;
+            }
+            Object buffer = slots[--size];
+            slots[size] = null;
+            return buffer;
+        }
+
+        synchronized void push(Object buffer) {
+            if (size < slots.length) {
+                slots[size++] = buffer;
+            }
+        }
+    }
+
+    private static final class PooledInputStream extends InputStream {
+        private final InputStream in;
+        private byte[] buffer;
+        private int position;
+        private int limit;
+
+        PooledInputStream(InputStream in, byte[] buffer) {
+            this.in = in;
+            this.buffer = buffer;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (buffer == null) {
+                throw new IOException("流已关闭");
+            }
+        }
+
+        private boolean fill() throws IOException {
+            int count = in.read(buffer, 0, buffer.length);
+            position = 0;
+            limit = Math.max(count, 0);
+            return count > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ensureOpen();
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit) {
+                // 大块读取直接读入调用方的数组
+                if (len >= buffer.length) {
+                    return in.read(b, off, len);
+                }
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            int count = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureOpen();
+            return (limit - position) + in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer != null) {
+                release(buffer);
+                buffer = null;
+                in.close();
+            }
+        }
+    }
+
+    private static final class PooledOutputStream extends OutputStream {
+        private final OutputStream out;
+        private byte[] buffer;
+        private int count;
+
+        PooledOutputStream(OutputStream out, byte[] buffer) {
+            this.out = out;
+            this.buffer = buffer;
+        }
+
+        private void flushBuffer() throws IOException {
+            if (count > 0) {
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (buffer == null) {
+                throw new IOException("流已关闭");
+            }
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (buffer == null) {
+                throw new IOException("流已关闭");
+            }
+            if (len >= buffer.length) {
+                flushBuffer();
+                out.write(b, off, len);
+                return;
+            }
+            if (len > buffer.length - count) {
+                flushBuffer();
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer != null) {
+                flushBuffer();
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                flushBuffer();
+            } finally {
+                release(buffer);
+                buffer = null;
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.minshenyao;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * 关联 RMI/LDAP 引用与随后的 HTTP 类下载，统计引用到下载的延迟
+ * <p>
+ * 关联键为 来源地址 + 预期下载路径，条目在时间窗口内有效，过期条目在写入时顺带清理。
+ */
+public final class CallbackCorrelator {
+    private static final Logger LOGGER = Logger.getLogger(CallbackCorrelator.class.getName());
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private static final ConcurrentHashMap<String, Referral> pending = new ConcurrentHashMap<>();
+    private static final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + WINDOW_NANOS);
+    private static final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+    private static final AtomicLong matched = new AtomicLong();
+
+    private CallbackCorrelator() {
+    }
+
+    /**
+     * 记录一次引用
+     * @param protocol 协议名称（RMI/LDAP）
+     * @param sourceAddress 客户端 IP
+     * @param requestedName 客户端请求的名称或 DN
+     * @param expectedPath 预期的 HTTP 下载路径
+     */
+    public static void recordReferral(String protocol, String sourceAddress, String requestedName, String expectedPath) {
+        long now = System.nanoTime();
+        pending.put(key(sourceAddress, expectedPath), new Referral(protocol, requestedName, now));
+        sweepIfDue(now);
+    }
+
+    /**
+     * 记录一次 HTTP 下载，若能匹配到时间窗口内的引用则记录延迟
+     * @param sourceAddress 客户端 IP
+     * @param path 请求路径
+     * @return 引用到下载的延迟（微秒），未匹配时返回 {@link CallbackHistory#NO_LATENCY}
+     */
+    public static int recordDownload(String sourceAddress, String path) {
+        if (pending.isEmpty()) {
+            return CallbackHistory.NO_LATENCY;
+        }
+        long now = System.nanoTime();
+        Referral referral = pending.remove(key(sourceAddress, path));
+        if (referral == null || now - referral.timestamp > WINDOW_NANOS) {
+            return CallbackHistory.NO_LATENCY;
+        }
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(now - referral.timestamp);
+        long index = matched.getAndIncrement();
+        latencies.set((int) (index % LATENCY_SAMPLES), latencyMicros);
+        LOGGER.info("回连匹配: " + referral.protocol + " " + referral.requestedName + " -> " + path
+                + "，来源 " + sourceAddress + "，延迟 " + formatMillis(latencyMicros) + " ms");
+        // 时间窗口为 60 秒，微秒值不会超出 int 范围
+        return (int) latencyMicros;
+    }
+
+    /**
+     * 获取当前延迟统计（基于最近 1024 次匹配）
+     */
+    public static Stats snapshot() {
+        long count = matched.get();
+        long[] samples = exportLatencies();
+        Arrays.sort(samples);
+        return new Stats(count, samples);
+    }
+
+    /**
+     * 导出已匹配次数与延迟样本环（用于会话快照）
+     */
+    public static long[] exportLatencies() {
+        int size = (int) Math.min(matched.get(), LATENCY_SAMPLES);
+        long[] samples = new long[size];
+        for (int i = 0; i < size; i++) {
+            samples[i] = latencies.get(i);
+        }
+        return samples;
+    }
+
+    public static long getMatchedCount() {
+        return matched.get();
+    }
+
+    /**
+     * 从会话快照恢复统计
+     */
+    public static void restore(long count, long[] samples) {
+        for (int i = 0; i < samples.length && i < LATENCY_SAMPLES; i++) {
+            latencies.set(i, samples[i]);
+        }
+        matched.set(Math.max(count, samples.length));
+    }
+
+    static String formatMillis(long micros) {
+        return String.format("%.1f", micros / 1000.0);
+    }
+
+    private static String key(String sourceAddress, String path) {
+        return sourceAddress + '|' + path;
+    }
+
+    private static void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + WINDOW_NANOS)) {
+            return;
+        }
+        Iterator<Map.Entry<String, Referral>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().timestamp > WINDOW_NANOS) {
+                it.remove();
+            }
+        }
+    }
+
+    private static final class Referral {
+        final String protocol;
+        final String requestedName;
+        final long timestamp;
+
+        Referral(String protocol, String requestedName, long timestamp) {
+            this.protocol = protocol;
+            this.requestedName = requestedName;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * 延迟统计快照
+     */
+    public static final class Stats {
+        private final long count;
+        private final long[] sortedMicros;
+
+        Stats(long count, long[] sortedMicros) {
+            this.count = count;
+            this.sortedMicros = sortedMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @param percentile 0-100
+         * @return 延迟（微秒），无样本时返回 -1
+         */
+        public long percentile(double percentile) {
+            if (sortedMicros.length == 0) {
+                return -1;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sortedMicros.length) - 1;
+            return sortedMicros[Math.max(0, Math.min(index, sortedMicros.length - 1))];
+        }
+
+        @Override
+        public String toString() {
+            if (sortedMicros.length == 0) {
+                return "回连: 0 次";
+            }
+            return "回连: " + count + " 次  |  p50 " + formatMillis(percentile(50))
+                    + " ms  p90 " + formatMillis(percentile(90))
+                    + " ms  p99 " + formatMillis(percentile(99))
+                    + " ms  max " + formatMillis(percentile(100)) + " ms";
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package com.minshenyao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * 回连事件的内存列式存储
+ * <p>
+ * 每列按 64K 行分块保存（时间、协议、来源、名称、回连延迟）；来源 IP 和请求名称做字典编码，并为每个字典值、每种协议维护行号倒排表。
+ * 行按时间顺序追加，时间列本身有序，时间范围通过二分查找定位。
+ * 写入持有对象锁；查询只在开始时短暂持锁获取快照，之后的过滤不阻塞写入。
+ */
+public final class CallbackHistory {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /**
+     * 一个列块的字节数
+     */
+    static final long CHUNK_BYTES = (long) CHUNK_SIZE * (8 + 1 + 4 + 4 + 4);
+    /**
+     * 延迟列中表示没有匹配到引用
+     */
+    public static final int NO_LATENCY = -1;
+
+    private static final Object lock = new Object();
+    private static volatile Chunk[] chunks = new Chunk[0];
+    private static volatile int size;
+    private static long lastTimestamp;
+
+    private static final Map<String, Integer> sourceIds = new HashMap<>();
+    private static final List<String> sourceValues = new ArrayList<>();
+    private static final List<IntList> sourcePostings = new ArrayList<>();
+    private static final Map<String, Integer> nameIds = new HashMap<>();
+    private static final List<String> nameValues = new ArrayList<>();
+    private static final List<IntList> namePostings = new ArrayList<>();
+    private static final IntList[] protocolPostings = new IntList[Protocol.values().length];
+
+    static {
+        for (int i = 0; i < protocolPostings.length; i++) {
+            protocolPostings[i] = new IntList();
+        }
+    }
+
+    public enum Protocol {
+        RMI, LDAP, HTTP
+    }
+
+    private CallbackHistory() {
+    }
+
+    /**
+     * 记录一次回连事件
+     * @param protocol 协议
+     * @param source 来源 IP
+     * @param name RMI 名称 / LDAP DN / HTTP 路径
+     */
+    public static void record(Protocol protocol, String source, String name) {
+        record(protocol, source, name, NO_LATENCY);
+    }
+
+    /**
+     * 记录一次回连事件，并保存与之匹配的引用到下载的延迟
+     * @param latencyMicros 延迟（微秒），未匹配时为 {@link #NO_LATENCY}
+     */
+    public static void record(Protocol protocol, String source, String name, int latencyMicros) {
+        synchronized (lock) {
+            long now = Math.max(System.currentTimeMillis(), lastTimestamp);
+            lastTimestamp = now;
+            int row = size;
+            int chunkIndex = row >>> CHUNK_BITS;
+            Chunk[] current = chunks;
+            if (chunkIndex == current.length) {
+                current = Arrays.copyOf(current, current.length + 1);
+                current[chunkIndex] = new Chunk();
+                chunks = current;
+            }
+            Chunk chunk = current[chunkIndex];
+            int offset = row & CHUNK_MASK;
+            int sourceId = intern(source, sourceIds, sourceValues, sourcePostings);
+            int nameId = intern(name, nameIds, nameValues, namePostings);
+            chunk.timestamps[offset] = now;
+            chunk.protocols[offset] = (byte) protocol.ordinal();
+            chunk.sources[offset] = sourceId;
+            chunk.names[offset] = nameId;
+            chunk.latencies[offset] = latencyMicros;
+            sourcePostings.get(sourceId).add(row);
+            namePostings.get(nameId).add(row);
+            protocolPostings[protocol.ordinal()].add(row);
+            size = row + 1;
+        }
+    }
+
+    public static int size() {
+        return size;
+    }
+
+    /**
+     * 估算当前占用的数组内存（字节），不含字典字符串
+     */
+    static long retainedBytes() {
+        synchronized (lock) {
+            long bytes = chunks.length * CHUNK_BYTES;
+            for (IntList posting : sourcePostings) {
+                bytes += 4L * posting.data.length;
+            }
+            for (IntList posting : namePostings) {
+                bytes += 4L * posting.data.length;
+            }
+            for (IntList posting : protocolPostings) {
+                bytes += 4L * posting.data.length;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * 导出全部数据（用于会话快照）
+     */
+    public static Export export() {
+        synchronized (lock) {
+            Export e = new Export();
+            int n = size;
+            e.sourceValues = sourceValues.toArray(new String[0]);
+            e.nameValues = nameValues.toArray(new String[0]);
+            e.timestamps = new long[n];
+            e.protocols = new byte[n];
+            e.sources = new int[n];
+            e.names = new int[n];
+            e.latencies = new int[n];
+            for (int start = 0; start < n; start += CHUNK_SIZE) {
+                Chunk chunk = chunks[start >>> CHUNK_BITS];
+                int length = Math.min(CHUNK_SIZE, n - start);
+                System.arraycopy(chunk.timestamps, 0, e.timestamps, start, length);
+                System.arraycopy(chunk.protocols, 0, e.protocols, start, length);
+                System.arraycopy(chunk.sources, 0, e.sources, start, length);
+                System.arraycopy(chunk.names, 0, e.names, start, length);
+                System.arraycopy(chunk.latencies, 0, e.latencies, start, length);
+            }
+            return e;
+        }
+    }
+
+    /**
+     * 从会话快照恢复，仅在当前没有任何记录时生效
+     * <p>
+     * 先在局部结构中校验全部数据（字典不重复、下标在字典范围内、协议和延迟有效、时间不递减）并建好倒排表，
+     * 校验通过后才在锁内整体替换；数据无效时抛出异常，现有状态保持不变。
+     * @return 是否已恢复
+     * @throws IllegalArgumentException 快照数据无效
+     */
+    public static boolean restore(Export e) {
+        int n = e.timestamps.length;
+        if (e.protocols.length != n || e.sources.length != n || e.names.length != n || e.latencies.length != n) {
+            throw new IllegalArgumentException("回连记录各列长度不一致");
+        }
+        Map<String, Integer> restoredSourceIds = new HashMap<>();
+        List<String> restoredSourceValues = new ArrayList<>();
+        List<IntList> restoredSourcePostings = new ArrayList<>();
+        Map<String, Integer> restoredNameIds = new HashMap<>();
+        List<String> restoredNameValues = new ArrayList<>();
+        List<IntList> restoredNamePostings = new ArrayList<>();
+        restoreDictionary("来源", e.sourceValues, restoredSourceIds, restoredSourceValues, restoredSourcePostings);
+        restoreDictionary("名称", e.nameValues, restoredNameIds, restoredNameValues, restoredNamePostings);
+        IntList[] restoredProtocolPostings = new IntList[protocolPostings.length];
+        for (int i = 0; i < restoredProtocolPostings.length; i++) {
+            restoredProtocolPostings[i] = new IntList();
+        }
+
+        long previous = Long.MIN_VALUE;
+        for (int row = 0; row < n; row++) {
+            int source = e.sources[row];
+            int name = e.names[row];
+            int protocol = e.protocols[row];
+            if (e.timestamps[row] < previous) {
+                throw new IllegalArgumentException("第 " + row + " 行时间早于上一行");
+            }
+            if (source < 0 || source >= restoredSourceValues.size()
+                    || name < 0 || name >= restoredNameValues.size()
+                    || protocol < 0 || protocol >= restoredProtocolPostings.length
+                    || e.latencies[row] < NO_LATENCY) {
+                throw new IllegalArgumentException("第 " + row + " 行的来源、名称、协议或延迟无效");
+            }
+            previous = e.timestamps[row];
+            restoredSourcePostings.get(source).add(row);
+            restoredNamePostings.get(name).add(row);
+            restoredProtocolPostings[protocol].add(row);
+        }
+
+        Chunk[] restored = new Chunk[(n + CHUNK_MASK) >>> CHUNK_BITS];
+        for (int start = 0; start < n; start += CHUNK_SIZE) {
+            Chunk chunk = new Chunk();
+            int length = Math.min(CHUNK_SIZE, n - start);
+            System.arraycopy(e.timestamps, start, chunk.timestamps, 0, length);
+            System.arraycopy(e.protocols, start, chunk.protocols, 0, length);
+            System.arraycopy(e.sources, start, chunk.sources, 0, length);
+            System.arraycopy(e.names, start, chunk.names, 0, length);
+            System.arraycopy(e.latencies, start, chunk.latencies, 0, length);
+            restored[start >>> CHUNK_BITS] = chunk;
+        }
+
+        synchronized (lock) {
+            if (size != 0) {
+                return false;
+            }
+            sourceIds.clear();
+            sourceIds.putAll(restoredSourceIds);
+            sourceValues.clear();
+            sourceValues.addAll(restoredSourceValues);
+            sourcePostings.clear();
+            sourcePostings.addAll(restoredSourcePostings);
+            nameIds.clear();
+            nameIds.putAll(restoredNameIds);
+            nameValues.clear();
+            nameValues.addAll(restoredNameValues);
+            namePostings.clear();
+            namePostings.addAll(restoredNamePostings);
+            System.arraycopy(restoredProtocolPostings, 0, protocolPostings, 0, protocolPostings.length);
+            chunks = restored;
+            lastTimestamp = n > 0 ? e.timestamps[n - 1] : 0;
+            size = n;
+            return true;
+        }
+    }
+
+    private static void restoreDictionary(String kind, String[] values, Map<String, Integer> ids,
+                                          List<String> restoredValues, List<IntList> postings) {
+        for (String value : values) {
+            if (value == null || ids.putIfAbsent(value, restoredValues.size()) != null) {
+                throw new IllegalArgumentException(kind + "字典中有重复或空值: " + value);
+            }
+            restoredValues.add(value);
+            postings.add(new IntList());
+        }
+    }
+
+    /**
+     * 按条件查询，结果按时间倒序分批交付
+     * @param query 查询条件
+     * @param limit 最多交付的行数（计数不受限制）
+     * @param batchSize 每批交付的行数
+     * @param sink 结果批次的接收者
+     * @param cancelled 返回 true 时提前结束
+     * @return 匹配的总行数
+     */
+    public static int search(Query query, int limit, int batchSize, Consumer<List<Row>> sink, BooleanSupplier cancelled) {
+        Snapshot snapshot = snapshot(query);
+        int lo = lowerBound(snapshot, query.fromMillis, snapshot.size);
+        int hi = lowerBound(snapshot, query.toMillis, snapshot.size);
+        if (lo >= hi) {
+            return 0;
+        }
+
+        boolean[] sourceMatch = match(snapshot.sourceValues, query.source);
+        boolean[] nameMatch = match(snapshot.nameValues, query.name);
+        int protocol = query.protocol == null ? -1 : query.protocol.ordinal();
+
+        // 选择倒排表总长度最小的条件生成候选行，其余条件逐行校验
+        IntList[] candidateLists = null;
+        int[] candidateSizes = null;
+        long best = hi - lo;
+        if (protocol >= 0 && snapshot.protocolPosting.size < best) {
+            best = snapshot.protocolPosting.size;
+            candidateLists = new IntList[]{snapshot.protocolPosting};
+            candidateSizes = new int[]{snapshot.protocolPosting.size};
+        }
+        long sourceTotal = total(sourceMatch, snapshot.sourcePostingSizes);
+        if (sourceTotal < best) {
+            best = sourceTotal;
+            candidateLists = select(sourceMatch, snapshot.sourcePostings);
+            candidateSizes = select(sourceMatch, snapshot.sourcePostingSizes);
+        }
+        long nameTotal = total(nameMatch, snapshot.namePostingSizes);
+        if (nameTotal < best) {
+            candidateLists = select(nameMatch, snapshot.namePostings);
+            candidateSizes = select(nameMatch, snapshot.namePostingSizes);
+        }
+
+        // 单个倒排表直接在原数组上倒序遍历，多个则合并排序
+        int[] rows = null;
+        int from = lo;
+        int to = hi;
+        if (candidateLists != null && candidateLists.length == 1) {
+            rows = candidateLists[0].data;
+            from = lowerBound(rows, candidateSizes[0], lo);
+            to = lowerBound(rows, candidateSizes[0], hi);
+        } else if (candidateLists != null) {
+            rows = collect(candidateLists, candidateSizes, lo, hi);
+            from = 0;
+            to = rows.length;
+        }
+
+        Chunk[] data = snapshot.chunks;
+        List<Row> batch = new ArrayList<>(batchSize);
+        int matched = 0;
+        for (int i = to - 1; i >= from; i--) {
+            if ((i & 0xfff) == 0 && cancelled.getAsBoolean()) {
+                break;
+            }
+            int row = rows != null ? rows[i] : i;
+            Chunk chunk = data[row >>> CHUNK_BITS];
+            int offset = row & CHUNK_MASK;
+            if (protocol >= 0 && chunk.protocols[offset] != protocol) {
+                continue;
+            }
+            if (sourceMatch != null && !sourceMatch[chunk.sources[offset]]) {
+                continue;
+            }
+            if (nameMatch != null && !nameMatch[chunk.names[offset]]) {
+                continue;
+            }
+            if (matched++ < limit) {
+                batch.add(new Row(chunk.timestamps[offset], Protocol.values()[chunk.protocols[offset]],
+                        snapshot.sourceValues[chunk.sources[offset]], snapshot.nameValues[chunk.names[offset]],
+                        chunk.latencies[offset]));
+                if (batch.size() == batchSize) {
+                    sink.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+        return matched;
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<String> values, List<IntList> postings) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+            postings.add(new IntList());
+        }
+        return id;
+    }
+
+    private static Snapshot snapshot(Query query) {
+        synchronized (lock) {
+            Snapshot s = new Snapshot();
+            s.size = size;
+            s.chunks = chunks;
+            s.sourceValues = sourceValues.toArray(new String[0]);
+            s.nameValues = nameValues.toArray(new String[0]);
+            s.sourcePostings = sourcePostings.toArray(new IntList[0]);
+            s.namePostings = namePostings.toArray(new IntList[0]);
+            s.sourcePostingSizes = sizes(s.sourcePostings);
+            s.namePostingSizes = sizes(s.namePostings);
+            if (query.protocol != null) {
+                IntList posting = protocolPostings[query.protocol.ordinal()];
+                s.protocolPosting = posting.copy();
+            }
+            return s;
+        }
+    }
+
+    private static int[] sizes(IntList[] lists) {
+        int[] result = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            result[i] = lists[i].size;
+        }
+        return result;
+    }
+
+    /**
+     * 第一个时间戳 >= millis 的行号
+     */
+    private static int lowerBound(Snapshot snapshot, long millis, int n) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (snapshot.chunks[mid >>> CHUNK_BITS].timestamps[mid & CHUNK_MASK] < millis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static boolean[] match(String[] values, String needle) {
+        if (needle == null || needle.isEmpty()) {
+            return null;
+        }
+        boolean[] result = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i].contains(needle);
+        }
+        return result;
+    }
+
+    /**
+     * 第一个 >= value 的下标
+     */
+    private static int lowerBound(int[] rows, int n, int value) {
+        int index = Arrays.binarySearch(rows, 0, n, value);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * 匹配字典值的倒排表总长度；无此条件时返回 Long.MAX_VALUE
+     */
+    private static long total(boolean[] match, int[] sizes) {
+        if (match == null) {
+            return Long.MAX_VALUE;
+        }
+        long total = 0;
+        for (int i = 0; i < match.length; i++) {
+            if (match[i]) {
+                total += sizes[i];
+            }
+        }
+        return total;
+    }
+
+    private static IntList[] select(boolean[] match, IntList[] postings) {
+        List<IntList> selected = new ArrayList<>();
+        for (int i = 0; i < match.length; i++) {
+            if (match[i]) {
+                selected.add(postings[i]);
+            }
+        }
+        return selected.toArray(new IntList[0]);
+    }
+
+    private static int[] select(boolean[] match, int[] sizes) {
+        int[] selected = new int[sizes.length];
+        int j = 0;
+        for (int i = 0; i < match.length; i++) {
+            if (match[i]) {
+                selected[j++] = sizes[i];
+            }
+        }
+        return Arrays.copyOf(selected, j);
+    }
+
+    private static int[] collect(IntList[] postings, int[] sizes, int lo, int hi) {
+        IntList result = new IntList();
+        for (int i = 0; i < postings.length; i++) {
+            int[] rows = postings[i].data;
+            int n = sizes[i];
+            for (int k = lowerBound(rows, n, lo); k < n && rows[k] < hi; k++) {
+                result.add(rows[k]);
+            }
+        }
+        int[] out = Arrays.copyOf(result.data, result.size);
+        Arrays.sort(out);
+        return out;
+    }
+
+    private static final class Chunk {
+        final long[] timestamps = new long[CHUNK_SIZE];
+        final byte[] protocols = new byte[CHUNK_SIZE];
+        final int[] sources = new int[CHUNK_SIZE];
+        final int[] names = new int[CHUNK_SIZE];
+        final int[] latencies = new int[CHUNK_SIZE];
+    }
+
+    private static final class IntList {
+        volatile int[] data = new int[4];
+        volatile int size;
+
+        void add(int value) {
+            int[] d = data;
+            if (size == d.length) {
+                d = Arrays.copyOf(d, d.length * 2);
+                data = d;
+            }
+            d[size] = value;
+            size = size + 1;
+        }
+
+        IntList copy() {
+            IntList c = new IntList();
+            c.data = data;
+            c.size = size;
+            return c;
+        }
+    }
+
+    private static final class Snapshot {
+        int size;
+        Chunk[] chunks;
+        String[] sourceValues;
+        String[] nameValues;
+        IntList[] sourcePostings;
+        IntList[] namePostings;
+        int[] sourcePostingSizes;
+        int[] namePostingSizes;
+        IntList protocolPosting;
+    }
+
+    /**
+     * 按列导出的全部数据，source/name 为字典下标，latencies 为回连延迟（微秒，未匹配为 {@link #NO_LATENCY}）
+     */
+    public static final class Export {
+        public String[] sourceValues;
+        public String[] nameValues;
+        public long[] timestamps;
+        public byte[] protocols;
+        public int[] sources;
+        public int[] names;
+        public int[] latencies;
+    }
+
+    /**
+     * 查询条件，空字段表示不限制
+     */
+    public static final class Query {
+        String source;
+        Protocol protocol;
+        String name;
+        long fromMillis = Long.MIN_VALUE;
+        long toMillis = Long.MAX_VALUE;
+
+        public Query source(String value) {
+            this.source = value;
+            return this;
+        }
+
+        public Query protocol(Protocol value) {
+            this.protocol = value;
+            return this;
+        }
+
+        public Query name(String value) {
+            this.name = value;
+            return this;
+        }
+
+        public Query since(long millis) {
+            this.fromMillis = millis;
+            return this;
+        }
+    }
+
+    /**
+     * 一条回连记录
+     */
+    public static final class Row {
+        public final long timestamp;
+        public final Protocol protocol;
+        public final String source;
+        public final String name;
+        /**
+         * 引用到本次下载的延迟（微秒），未匹配到引用时为 {@link #NO_LATENCY}
+         */
+        public final int latencyMicros;
+
+        Row(long timestamp, Protocol protocol, String source, String name, int latencyMicros) {
+            this.timestamp = timestamp;
+            this.protocol = protocol;
+            this.source = source;
+            this.name = name;
+            this.latencyMicros = latencyMicros;
+        }
+    }
+}
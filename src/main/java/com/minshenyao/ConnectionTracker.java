@@ -0,0 +1,144 @@
+package com.minshenyao;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 跟踪一个监听器上仍在处理中的连接（RMI/LDAP）或请求（HTTP）
+ * <p>
+ * 停止或切换端口时，监听器先停止接受新连接，再通过 {@link #awaitIdle(long)} 在排空期限内
+ * 等待已接受的连接自然结束，超时后用 {@link #closeAll()} 强制关闭剩余连接。
+ */
+final class ConnectionTracker {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionTracker.class.getName());
+    static final long DRAIN_MILLIS = 5000;
+
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private int active;
+
+    /**
+     * 创建一个关闭时自动从跟踪中移除的套接字，供 ServerSocket.implAccept 使用
+     */
+    Socket newSocket() {
+        return new TrackedSocket();
+    }
+
+    /**
+     * 开始跟踪已接受的连接
+     */
+    void opened(Socket socket) {
+        acquire();
+        sockets.add(socket);
+        // 跟踪前已被关闭的连接立即释放
+        if (socket.isClosed()) {
+            closed(socket);
+        }
+    }
+
+    private void closed(Socket socket) {
+        if (sockets.remove(socket)) {
+            release();
+        }
+    }
+
+    private synchronized void acquire() {
+        active++;
+    }
+
+    private synchronized void release() {
+        if (--active == 0) {
+            notifyAll();
+        }
+    }
+
+    synchronized int active() {
+        return active;
+    }
+
+    /**
+     * 等待所有连接结束
+     * @return 期限内是否已全部结束
+     */
+    synchronized boolean awaitIdle(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (active > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return active == 0;
+        }
+        return true;
+    }
+
+    /**
+     * 强制关闭所有仍在跟踪的套接字
+     * @return 被关闭的连接数
+     */
+    int closeAll() {
+        int count = 0;
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+                count++;
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "关闭连接时出错", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 统计处理中的 HTTP 请求的过滤器
+     */
+    Filter httpFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                acquire();
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    release();
+                }
+            }
+
+            @Override
+            public String description() {
+                return "统计处理中的请求";
+            }
+        };
+    }
+
+    /**
+     * 在后台守护线程中排空旧监听器，切换端口时新监听器不必等待
+     */
+    static void drainInBackground(String name, Runnable drain) {
+        Thread thread = new Thread(drain, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private final class TrackedSocket extends Socket {
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                closed(this);
+            }
+        }
+    }
+}
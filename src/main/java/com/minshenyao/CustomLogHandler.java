@@ -1,6 +1,9 @@
 package com.minshenyao;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
 import java.time.LocalDateTime;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
@@ -10,6 +13,11 @@ import java.util.logging.SimpleFormatter;
  * 自定义日志处理器，将日志输出到GUI的文本区域
  */
 public class CustomLogHandler extends Handler {
+    /**
+     * 日志区最多保留的行数，超出 {@link #TRIM_SLACK} 行后一次性删除最早的行
+     */
+    static final int MAX_LINES = 5000;
+    static final int TRIM_SLACK = 500;
     private final JTextArea logArea;
     private final SimpleFormatter formatter = new SimpleFormatter();
 
@@ -23,11 +31,28 @@ public class CustomLogHandler extends Handler {
         SwingUtilities.invokeLater(() -> {
             String formattedMsg = "[" + LocalDateTime.now() + "] " +
                     formatter.formatMessage(record) + "\n";
-            logArea.append(formattedMsg);
-            logArea.setCaretPosition(logArea.getDocument().getLength());
+            append(logArea, formattedMsg);
         });
     }
 
+    /**
+     * 追加到日志区并滚动到末尾，必须在 EDT 中调用
+     */
+    static void append(JTextArea logArea, String text) {
+        logArea.append(text);
+        Document document = logArea.getDocument();
+        Element root = document.getDefaultRootElement();
+        int excess = root.getElementCount() - MAX_LINES;
+        if (excess > TRIM_SLACK) {
+            try {
+                document.remove(0, root.getElement(excess).getStartOffset());
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        logArea.setCaretPosition(document.getLength());
+    }
+
     @Override
     public void flush() {
     }
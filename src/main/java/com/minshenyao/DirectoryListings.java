@@ -0,0 +1,332 @@
+package com.minshenyao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP 目录列表：按页渲染并缓存，直到 WatchService 报告目录内容变化
+ * <p>
+ * 目录项通过 DirectoryStream 读取一次并排序保存；每页渲染结果在首次请求时边写出边缓存。
+ * 最多缓存 {@value #MAX_DIRECTORIES} 个目录，超出时淘汰最久未访问的目录。
+ */
+class DirectoryListings implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(DirectoryListings.class.getName());
+    static final int PAGE_SIZE = 1000;
+    private static final int MAX_DIRECTORIES = 64;
+
+    private final WatchService watchService;
+    private final Map<Path, Listing> cache = new LinkedHashMap<Path, Listing>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Listing> eldest) {
+            if (size() > MAX_DIRECTORIES) {
+                eldest.getValue().watchKey.cancel();
+                generations.remove(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<Path, Long> generations = new HashMap<>();
+
+    DirectoryListings() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        Thread watchThread = new Thread(this::watchLoop, "http-listing-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * 获取已缓存的页面
+     * @param directory 目录
+     * @param path 相对于根目录的请求路径（不含开头的 /）
+     * @param page 页码，从 1 开始
+     * @return 页面字节，未缓存时返回 null
+     */
+    byte[] cachedPage(Path directory, String path, int page) throws IOException {
+        Listing listing = listing(directory);
+        byte[] bytes = listing.pages.get(page);
+        JfrEvents.httpCache("/" + path, bytes != null, bytes != null ? bytes.length : 0);
+        return bytes;
+    }
+
+    /**
+     * 渲染目录列表的一页，同时写入 out 并缓存
+     */
+    void renderPage(Path directory, String path, int page, OutputStream out) throws IOException {
+        Listing listing = listing(directory);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(new TeeOutputStream(out, copy), StandardCharsets.UTF_8);
+        render(listing, path, page, writer);
+        writer.flush();
+        synchronized (this) {
+            if (cache.get(directory) == listing) {
+                listing.pages.put(page, copy.toByteArray());
+            }
+        }
+    }
+
+    int pageCount(Path directory) throws IOException {
+        return listing(directory).pageCount();
+    }
+
+    private Listing listing(Path directory) throws IOException {
+        synchronized (this) {
+            Listing listing = cache.get(directory);
+            if (listing != null) {
+                return listing;
+            }
+        }
+        // 先注册监听再读取目录；读取期间若有变化，本次结果不进入缓存
+        WatchKey key = directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        long generation;
+        synchronized (this) {
+            generation = generations.getOrDefault(directory, 0L);
+        }
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                entries.add(new Entry(child.getFileName().toString(), Files.isDirectory(child)));
+            }
+        }
+        Collections.sort(entries, (a, b) -> a.name.compareTo(b.name));
+        Listing listing = new Listing(entries, key);
+        synchronized (this) {
+            Listing existing = cache.get(directory);
+            if (existing != null) {
+                return existing;
+            }
+            if (generations.getOrDefault(directory, 0L) == generation) {
+                cache.put(directory, listing);
+            }
+        }
+        return listing;
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            key.pollEvents();
+            Path directory = (Path) key.watchable();
+            synchronized (this) {
+                generations.merge(directory, 1L, Long::sum);
+                cache.remove(directory);
+            }
+            key.reset();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "关闭目录监听时出错", e);
+        }
+        synchronized (this) {
+            cache.clear();
+        }
+    }
+
+    private static void render(Listing listing, String path, int page, Writer out) throws IOException {
+        String title = escapeHtml(path.isEmpty() ? "/" : path);
+        int pages = listing.pageCount();
+        out.write("<!DOCTYPE html>\n"
+                + "<html>\n"
+                + "<head>\n"
+                + "    <meta charset=\"UTF-8\">\n"
+                + "    <title>目录列表: " + title + "</title>\n"
+                + "    <style>\n"
+                + "        body { font-family: Arial, sans-serif; margin: 20px; }\n"
+                + "        h1 { color: #333; }\n"
+                + "        ul { list-style-type: none; padding: 0; }\n"
+                + "        li { margin: 5px 0; }\n"
+                + "        a { text-decoration: none; color: #0366d6; }\n"
+                + "        a:hover { text-decoration: underline; }\n"
+                + "    </style>\n"
+                + "</head>\n"
+                + "<body>\n"
+                + "    <h1>目录: " + title + "</h1>\n");
+        writePager(out, page, pages, listing.entries.size());
+        out.write("    <ul>\n");
+
+        // 如果不是根目录，添加返回上级目录的链接
+        if (!path.isEmpty() && page == 1) {
+            out.write("        <li><a href=\"../\">../</a> (上级目录)</li>\n");
+        }
+
+        String base = "/" + encodePath(path);
+        if (!base.endsWith("/")) {
+            base += "/";
+        }
+        int from = (page - 1) * PAGE_SIZE;
+        int to = Math.min(from + PAGE_SIZE, listing.entries.size());
+        for (int i = from; i < to; i++) {
+            Entry entry = listing.entries.get(i);
+            String suffix = entry.directory ? "/" : "";
+            out.write("        <li><a href=\"");
+            out.write(base);
+            out.write(encodeSegment(entry.name));
+            out.write(suffix);
+            out.write("\">");
+            out.write(escapeHtml(entry.name));
+            out.write(suffix);
+            out.write("</a></li>\n");
+        }
+
+        out.write("    </ul>\n");
+        writePager(out, page, pages, listing.entries.size());
+        out.write("</body>\n</html>");
+    }
+
+    private static void writePager(Writer out, int page, int pages, int total) throws IOException {
+        if (pages <= 1) {
+            return;
+        }
+        out.write("    <p>");
+        if (page > 1) {
+            out.write("<a href=\"?page=" + (page - 1) + "\">上一页</a> ");
+        }
+        out.write("第 " + page + " / " + pages + " 页，共 " + total + " 项");
+        if (page < pages) {
+            out.write(" <a href=\"?page=" + (page + 1) + "\">下一页</a>");
+        }
+        out.write("</p>\n");
+    }
+
+    static String escapeHtml(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            switch (c) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&#39;";
+                    break;
+                default:
+                    replacement = null;
+            }
+            if (replacement != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(value.length() + 16).append(value, 0, i);
+                }
+                sb.append(replacement);
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? value : sb.toString();
+    }
+
+    private static String encodePath(String path) {
+        StringBuilder sb = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            sb.append(encodeSegment(segment)).append('/');
+        }
+        return sb.toString();
+    }
+
+    private static String encodeSegment(String segment) {
+        try {
+            return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final boolean directory;
+
+        Entry(String name, boolean directory) {
+            this.name = name;
+            this.directory = directory;
+        }
+    }
+
+    private static final class Listing {
+        final List<Entry> entries;
+        final WatchKey watchKey;
+        final Map<Integer, byte[]> pages = new ConcurrentHashMap<>();
+
+        Listing(List<Entry> entries, WatchKey watchKey) {
+            this.entries = entries;
+            this.watchKey = watchKey;
+        }
+
+        int pageCount() {
+            return Math.max(1, (entries.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        }
+    }
+
+    private static final class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+        }
+    }
+}
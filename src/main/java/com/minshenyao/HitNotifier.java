@@ -0,0 +1,254 @@
+package com.minshenyao;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 命中通知管道：服务线程只把事件放入有界队列，由单独的守护线程批量投递到各个通知端
+ * <p>
+ * 队列满时直接丢弃并计数，不会阻塞请求处理线程；投递失败按指数退避重试。
+ * 通知端只在投递线程中使用和关闭，通知端本身无需线程安全。
+ */
+public final class HitNotifier {
+    private static final Logger LOGGER = Logger.getLogger(HitNotifier.class.getName());
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int MAX_BATCH = 256;
+    private static final long LINGER_MILLIS = 200;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+
+    private static final BlockingQueue<Hit> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    private static final AtomicLong published = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static volatile boolean enabled;
+    private static volatile boolean aborted;
+    private static Thread dispatcher;
+
+    private HitNotifier() {
+    }
+
+    /**
+     * 通知端
+     */
+    public interface Sink {
+        /**
+         * 投递一批事件，失败时抛出异常以触发重试
+         */
+        void deliver(List<Hit> batch) throws IOException;
+
+        /**
+         * 投递失败后调用，通知端可借此关闭并在下次投递时重建连接
+         */
+        default void reset() {
+        }
+
+        void close();
+
+        String describe();
+    }
+
+    /**
+     * 一次命中事件
+     */
+    public static final class Hit {
+        public final long timestamp;
+        public final CallbackHistory.Protocol protocol;
+        public final String source;
+        public final String name;
+
+        Hit(long timestamp, CallbackHistory.Protocol protocol, String source, String name) {
+            this.timestamp = timestamp;
+            this.protocol = protocol;
+            this.source = source;
+            this.name = name;
+        }
+
+        /**
+         * 单行 JSON 表示
+         */
+        public String toJson() {
+            return "{\"timestamp\":" + timestamp
+                    + ",\"protocol\":\"" + protocol + "\""
+                    + ",\"source\":" + quote(source)
+                    + ",\"name\":" + quote(name) + "}";
+        }
+    }
+
+    /**
+     * 注册通知端，首次注册时启动投递线程
+     */
+    public static synchronized void addSink(Sink sink) {
+        sinks.add(sink);
+        enabled = true;
+        if (dispatcher == null) {
+            dispatcher = new Thread(HitNotifier::dispatchLoop, "hit-notifier");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+        LOGGER.info("已添加命中通知: " + sink.describe());
+    }
+
+    /**
+     * 发布一次命中事件；未配置通知端时为空操作
+     */
+    public static void publish(CallbackHistory.Protocol protocol, String source, String name) {
+        if (!enabled) {
+            return;
+        }
+        if (queue.offer(new Hit(System.currentTimeMillis(), protocol, source, name))) {
+            published.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public static long getPublished() {
+        return published.get();
+    }
+
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    public static long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * 停止投递线程，在超时内尽量投递完队列中剩余的事件
+     * <p>
+     * 通知端由投递线程退出时关闭。超时后投递线程可能仍阻塞在某次投递中（如 Webhook 读超时），
+     * 此时只设置中止标志：放弃剩余事件和重试，当前投递返回后再关闭通知端，避免与投递并发关闭。
+     */
+    public static synchronized void shutdown(long timeoutMillis) {
+        if (dispatcher == null) {
+            return;
+        }
+        enabled = false;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dispatcher.isAlive()) {
+            aborted = true;
+            LOGGER.warning("命中通知在 " + timeoutMillis + " ms 内未投递完，放弃剩余 " + queue.size() + " 条事件");
+        }
+        dispatcher = null;
+    }
+
+    private static void dispatchLoop() {
+        try {
+            dispatch();
+        } finally {
+            for (Sink sink : sinks) {
+                sink.close();
+            }
+            sinks.clear();
+        }
+    }
+
+    private static void dispatch() {
+        List<Hit> batch = new ArrayList<>(MAX_BATCH);
+        boolean stopping = false;
+        while ((!stopping || !queue.isEmpty()) && !aborted) {
+            try {
+                Hit first = stopping ? queue.poll() : queue.take();
+                if (first == null) {
+                    break;
+                }
+                batch.add(first);
+                // 稍等片刻凑批，减少小批次的 I/O
+                if (!stopping && queue.size() < MAX_BATCH) {
+                    Thread.sleep(LINGER_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            queue.drainTo(batch, MAX_BATCH - batch.size());
+            if (!batch.isEmpty()) {
+                deliver(batch);
+                batch = new ArrayList<>(MAX_BATCH);
+            }
+        }
+    }
+
+    private static void deliver(List<Hit> batch) {
+        boolean interrupted = false;
+        for (Sink sink : sinks) {
+            for (int attempt = 1; ; attempt++) {
+                if (aborted) {
+                    failed.addAndGet(batch.size());
+                    break;
+                }
+                try {
+                    sink.deliver(batch);
+                    break;
+                } catch (Exception e) {
+                    sink.reset();
+                    if (attempt >= MAX_ATTEMPTS) {
+                        failed.addAndGet(batch.size());
+                        LOGGER.log(Level.WARNING, "命中通知投递失败: " + sink.describe(), e);
+                        break;
+                    }
+                    // 关闭期间被中断时不再等待，但仍用完重试次数
+                    if (!interrupted) {
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+                        } catch (InterruptedException ie) {
+                            interrupted = true;
+                        }
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,215 @@
+package com.minshenyao;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 内置的命中通知端：JSON Lines 文件、UNIX 域套接字、HTTP Webhook
+ */
+public final class HitSinks {
+    private static final Logger LOGGER = Logger.getLogger(HitSinks.class.getName());
+    private static final int WEBHOOK_TIMEOUT_MILLIS = 5000;
+
+    private HitSinks() {
+    }
+
+    /**
+     * 每个事件一行 JSON，追加写入文件
+     */
+    public static HitNotifier.Sink jsonLinesFile(Path path) {
+        return new JsonLinesFileSink(path);
+    }
+
+    /**
+     * 每个事件一行 JSON，写入 UNIX 域套接字（需要 JDK 21+）
+     */
+    public static HitNotifier.Sink unixSocket(Path path) {
+        return new UnixSocketSink(path);
+    }
+
+    /**
+     * 每批事件以 JSON 数组 POST 到指定 URL
+     */
+    public static HitNotifier.Sink webhook(URL url) {
+        return new WebhookSink(url);
+    }
+
+    private static String jsonLines(List<HitNotifier.Hit> batch) {
+        StringBuilder sb = new StringBuilder(batch.size() * 128);
+        for (HitNotifier.Hit hit : batch) {
+            sb.append(hit.toJson()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static final class JsonLinesFileSink implements HitNotifier.Sink {
+        private final Path path;
+        private BufferedWriter writer;
+
+        JsonLinesFileSink(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void deliver(List<HitNotifier.Hit> batch) throws IOException {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(jsonLines(batch));
+            writer.flush();
+        }
+
+        @Override
+        public void reset() {
+            close();
+        }
+
+        @Override
+        public void close() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "关闭通知文件时出错", e);
+                }
+                writer = null;
+            }
+        }
+
+        @Override
+        public String describe() {
+            return "文件 " + path.toAbsolutePath();
+        }
+    }
+
+    private static final class UnixSocketSink implements HitNotifier.Sink {
+        private final Path path;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteChannel channel;
+
+        UnixSocketSink(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void deliver(List<HitNotifier.Hit> batch) throws IOException {
+            if (channel == null) {
+                channel = UnixSockets.connect(path);
+            }
+            // 直接编码到池中的直接缓冲，写入通道时无需再复制到临时直接缓冲
+            CharBuffer chars = CharBuffer.wrap(jsonLines(batch));
+            ByteBuffer buffer = BufferPool.acquireDirect(BufferPool.MEDIUM);
+            try {
+                encoder.reset();
+                boolean done = false;
+                while (!done) {
+                    CoderResult result = encoder.encode(chars, buffer, true);
+                    if (result.isUnderflow()) {
+                        result = encoder.flush(buffer);
+                        done = result.isUnderflow();
+                    }
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    ((Buffer) buffer).flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    ((Buffer) buffer).clear();
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+        }
+
+        @Override
+        public void reset() {
+            close();
+        }
+
+        @Override
+        public void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "关闭 UNIX 域套接字时出错", e);
+                }
+                channel = null;
+            }
+        }
+
+        @Override
+        public String describe() {
+            return "UNIX 域套接字 " + path.toAbsolutePath();
+        }
+    }
+
+    private static final class WebhookSink implements HitNotifier.Sink {
+        private final URL url;
+
+        WebhookSink(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public void deliver(List<HitNotifier.Hit> batch) throws IOException {
+            StringBuilder sb = new StringBuilder(batch.size() * 128).append('[');
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(batch.get(i).toJson());
+            }
+            byte[] body = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                connection.setRequestMethod("POST");
+                connection.setConnectTimeout(WEBHOOK_TIMEOUT_MILLIS);
+                connection.setReadTimeout(WEBHOOK_TIMEOUT_MILLIS);
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+                try (OutputStream os = connection.getOutputStream()) {
+                    os.write(body);
+                }
+                int status = connection.getResponseCode();
+                if (status < 200 || status >= 300) {
+                    throw new IOException("Webhook 返回状态码 " + status);
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String describe() {
+            return "Webhook " + url;
+        }
+    }
+}
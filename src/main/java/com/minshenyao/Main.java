@@ -1,9 +1,16 @@
 package com.minshenyao;
 
 import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.File;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Handler;
@@ -33,17 +40,120 @@ public class Main {
     private static JButton startHttpButton;
     private static JButton stopHttpButton;
     private static JButton chooseDirectoryButton;
+    private static JButton startJfrButton;
+    private static JButton stopJfrButton;
     private static JTextField codebaseField;
     private static JTextField rmiPortField;
     private static JTextField ldapPortField;
     private static JTextField httpPortField;
     private static JTextField httpDirField;
+    private static JCheckBox rateLimitBox;
+    private static JTextField rateField;
+    private static JTextField burstField;
+    private static JLabel callbackStatsLabel;
+    private static JLabel admissionStatsLabel;
+    private static JLabel bufferPoolLabel;
+    private static JTextField historySourceField;
+    private static JComboBox<String> historyProtocolBox;
+    private static JTextField historyNameField;
+    private static JComboBox<String> historyTimeBox;
+    private static DefaultTableModel historyModel;
+    private static JLabel historyStatusLabel;
+    private static SwingWorker<Integer, CallbackHistory.Row> historyWorker;
+
+    private static final int HISTORY_DISPLAY_LIMIT = 5000;
+    private static final String[] HISTORY_TIME_OPTIONS = {"全部", "最近 5 分钟", "最近 1 小时", "最近 24 小时"};
+    private static final long[] HISTORY_TIME_MILLIS = {0, 5 * 60_000L, 60 * 60_000L, 24 * 60 * 60_000L};
+    private static final int SESSION_SAVE_INTERVAL_MILLIS = 60_000;
+    private static SessionStore.Config restoredSession;
+    private static long soakSeconds;
+    private static Path soakReport;
 
     public static void main(String[] args) {
         System.setProperty("java.awt.screenScale", "1");
+        parseArguments(args);
+        if (soakSeconds > 0) {
+            System.exit(SoakMode.run(soakSeconds, soakReport));
+        }
+        restoredSession = SessionStore.restore();
         SwingUtilities.invokeLater(Main::createAndShowGUI);
     }
 
+    /**
+     * 解析命令行参数
+     * <p>
+     * --jfr &lt;文件&gt;：启动时开始 JFR 录制，退出时导出到指定文件<br>
+     * --notify-file &lt;文件&gt;：命中事件以 JSON Lines 追加到文件<br>
+     * --notify-unix &lt;套接字&gt;：命中事件以 JSON Lines 写入 UNIX 域套接字（JDK 21+）<br>
+     * --notify-webhook &lt;URL&gt;：命中事件批量 POST 到 Webhook<br>
+     * --session &lt;文件&gt;：会话快照文件，默认 ~/.jndi-injector-gui/session.bin<br>
+     * --rate-limit &lt;每秒&gt;[:&lt;突发&gt;]：开启按来源 IP 限流（默认关闭）<br>
+     * --soak &lt;秒&gt;：不启动界面，运行浸泡测试，指标持续上升时以非零退出码结束<br>
+     * --soak-report &lt;文件&gt;：浸泡测试报告另存到文件
+     */
+    private static void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                break;
+            }
+            switch (args[i]) {
+                case "--jfr":
+                    Path destination = Paths.get(args[++i]);
+                    if (JfrEvents.startRecording()) {
+                        Runtime.getRuntime().addShutdownHook(new Thread(() -> JfrEvents.stopRecording(destination)));
+                    }
+                    break;
+                case "--notify-file":
+                    HitNotifier.addSink(HitSinks.jsonLinesFile(Paths.get(args[++i])));
+                    break;
+                case "--notify-unix":
+                    Path socket = Paths.get(args[++i]);
+                    if (UnixSockets.isSupported()) {
+                        HitNotifier.addSink(HitSinks.unixSocket(socket));
+                    } else {
+                        LOGGER.warning("当前 JDK 不支持 UNIX 域套接字（需要 JDK 21+ 运行多版本 JAR），忽略 --notify-unix " + socket);
+                    }
+                    break;
+                case "--notify-webhook":
+                    try {
+                        HitNotifier.addSink(HitSinks.webhook(new URL(args[++i])));
+                    } catch (MalformedURLException e) {
+                        LOGGER.log(Level.WARNING, "无效的 Webhook URL: " + args[i], e);
+                    }
+                    break;
+                case "--soak":
+                    try {
+                        soakSeconds = Long.parseLong(args[++i]);
+                    } catch (NumberFormatException e) {
+                        LOGGER.warning("无效的浸泡测试时长: " + args[i]);
+                    }
+                    break;
+                case "--soak-report":
+                    soakReport = Paths.get(args[++i]);
+                    break;
+                case "--session":
+                    SessionStore.setSessionFile(Paths.get(args[++i]));
+                    break;
+                case "--rate-limit":
+                    String[] limit = args[++i].split(":", 2);
+                    try {
+                        double rate = Double.parseDouble(limit[0]);
+                        double burst = limit.length > 1 ? Double.parseDouble(limit[1]) : rate * 2;
+                        if (!isValidRateLimit(rate, burst)) {
+                            throw new NumberFormatException();
+                        }
+                        AdmissionController.configure(rate, burst);
+                        AdmissionController.setEnabled(true);
+                    } catch (NumberFormatException e) {
+                        LOGGER.warning("无效的限流参数: " + args[i] + "，需要每秒 > 0 且突发 >= 1，限流保持关闭");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
     private static void createAndShowGUI() {
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -52,7 +162,7 @@ public class Main {
         }
 
         JFrame frame = new JFrame("RMI、LDAP 和 HTTP 服务工具  —— By Minshenyao");
-        frame.setSize(600, 650);
+        frame.setSize(600, 820);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         JPanel mainPanel = new JPanel(new GridBagLayout());
@@ -68,6 +178,9 @@ public class Main {
         gbc.gridy = 0;
         gbc.weighty = 0;
         JPanel configPanel = createConfigPanel();
+        if (restoredSession != null) {
+            applySessionConfig(restoredSession);
+        }
         mainPanel.add(configPanel, gbc);
 
         // 控制面板
@@ -76,14 +189,36 @@ public class Main {
         JPanel controlPanel = createControlPanel();
         mainPanel.add(controlPanel, gbc);
 
-        // 日志区域
+        // 回连延迟统计
         gbc.gridy = 2;
+        gbc.weighty = 0;
+        callbackStatsLabel = new JLabel(CallbackCorrelator.snapshot().toString());
+        callbackStatsLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        mainPanel.add(callbackStatsLabel, gbc);
+
+        // 限流统计
+        gbc.gridy = 3;
+        admissionStatsLabel = new JLabel(AdmissionController.summary());
+        admissionStatsLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        mainPanel.add(admissionStatsLabel, gbc);
+
+        // 缓冲池统计
+        gbc.gridy = 4;
+        bufferPoolLabel = new JLabel(BufferPool.summary());
+        bufferPoolLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        mainPanel.add(bufferPoolLabel, gbc);
+
+        // 日志区域
+        gbc.gridy = 5;
         gbc.weighty = 1.0;
         logArea = new JTextArea(10, 30);
         logArea.setEditable(false);
         logArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
         JScrollPane scrollPane = new JScrollPane(logArea);
-        mainPanel.add(scrollPane, gbc);
+        JTabbedPane tabbedPane = new JTabbedPane();
+        tabbedPane.addTab("日志", scrollPane);
+        tabbedPane.addTab("回连记录", createHistoryPanel());
+        mainPanel.add(tabbedPane, gbc);
 
         frame.add(mainPanel);
         frame.setVisible(true);
@@ -91,14 +226,54 @@ public class Main {
 
         updateButtonStates();
 
+        new Timer(1000, e -> {
+            callbackStatsLabel.setText(CallbackCorrelator.snapshot().toString());
+            admissionStatsLabel.setText(AdmissionController.summary());
+            bufferPoolLabel.setText(BufferPool.summary());
+        }).start();
+
+        // 定期保存会话，无变化时 SessionStore 会跳过写入
+        new Timer(SESSION_SAVE_INTERVAL_MILLIS, e -> {
+            SessionStore.Config config = currentSessionConfig();
+            executor.submit(() -> SessionStore.save(config));
+        }).start();
+
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             stopServices();
+            HitNotifier.shutdown(2000);
+            SessionStore.save(currentSessionConfig());
             executor.shutdown();
         }));
 
         configureLogging();
     }
 
+    /**
+     * 读取界面上的配置用于保存会话，端口无效时使用默认值
+     */
+    private static SessionStore.Config currentSessionConfig() {
+        return new SessionStore.Config(codebaseField.getText(), httpDirField.getText(),
+                parsePortOrDefault(rmiPortField.getText(), DEFAULT_RMI_PORT),
+                parsePortOrDefault(ldapPortField.getText(), DEFAULT_LDAP_PORT),
+                parsePortOrDefault(httpPortField.getText(), DEFAULT_HTTP_PORT));
+    }
+
+    private static void applySessionConfig(SessionStore.Config config) {
+        codebaseField.setText(config.codebaseUrl);
+        httpDirField.setText(config.httpDirectory);
+        rmiPortField.setText(String.valueOf(config.rmiPort));
+        ldapPortField.setText(String.valueOf(config.ldapPort));
+        httpPortField.setText(String.valueOf(config.httpPort));
+    }
+
+    private static int parsePortOrDefault(String text, int defaultPort) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return defaultPort;
+        }
+    }
+
     /**
      * 配置日志系统，将所有服务的日志重定向到GUI
      */
@@ -193,9 +368,58 @@ public class Main {
         gbc.weightx = 0.0;
         panel.add(chooseDirectoryButton, gbc);
 
+        // 按来源限流：勾选或在输入框中回车后立即生效
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        panel.add(new JLabel("来源限流:"), gbc);
+
+        JPanel rateLimitPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        rateLimitBox = new JCheckBox("启用", AdmissionController.isEnabled());
+        rateField = new JTextField(formatLimit(AdmissionController.getRate()), 4);
+        burstField = new JTextField(formatLimit(AdmissionController.getBurst()), 4);
+        rateLimitBox.addActionListener(e -> applyRateLimit());
+        rateField.addActionListener(e -> applyRateLimit());
+        burstField.addActionListener(e -> applyRateLimit());
+        rateLimitPanel.add(rateLimitBox);
+        rateLimitPanel.add(new JLabel("每秒"));
+        rateLimitPanel.add(rateField);
+        rateLimitPanel.add(new JLabel("突发"));
+        rateLimitPanel.add(burstField);
+        gbc.gridx = 1;
+        gbc.gridwidth = 2;
+        panel.add(rateLimitPanel, gbc);
+
         return panel;
     }
 
+    private static String formatLimit(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private static boolean isValidRateLimit(double rate, double burst) {
+        return rate > 0 && burst >= 1 && !Double.isInfinite(rate) && !Double.isInfinite(burst);
+    }
+
+    private static void applyRateLimit() {
+        try {
+            double rate = Double.parseDouble(rateField.getText().trim());
+            double burst = Double.parseDouble(burstField.getText().trim());
+            if (!isValidRateLimit(rate, burst)) {
+                throw new NumberFormatException();
+            }
+            AdmissionController.configure(rate, burst);
+        } catch (NumberFormatException e) {
+            log("限流参数无效，需要每秒 > 0 且突发 >= 1");
+            rateField.setText(formatLimit(AdmissionController.getRate()));
+            burstField.setText(formatLimit(AdmissionController.getBurst()));
+            return;
+        }
+        AdmissionController.setEnabled(rateLimitBox.isSelected());
+        log(rateLimitBox.isSelected()
+                ? "来源限流已启用: 每秒 " + formatLimit(AdmissionController.getRate()) + "，突发 " + formatLimit(AdmissionController.getBurst())
+                : "来源限流已关闭");
+    }
+
     private static JPanel createControlPanel() {
         JPanel panel = new JPanel(new GridBagLayout());
         panel.setBorder(BorderFactory.createTitledBorder("服务控制"));
@@ -241,9 +465,117 @@ public class Main {
         gbc.gridy = 2;
         panel.add(httpPanel, gbc);
 
+        // JFR 录制控制
+        JPanel jfrPanel = new JPanel(new GridLayout(1, 2, 10, 0));
+        jfrPanel.setBorder(BorderFactory.createTitledBorder("JFR 录制"));
+        startJfrButton = createStyledButton("开始录制", e -> startJfrRecording());
+        stopJfrButton = createStyledButton("停止并导出", e -> stopJfrRecording(panel));
+        jfrPanel.add(startJfrButton);
+        jfrPanel.add(stopJfrButton);
+
+        gbc.gridx = 0;
+        gbc.gridy = 3;
+        panel.add(jfrPanel, gbc);
+
         return panel;
     }
 
+    private static JPanel createHistoryPanel() {
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+
+        // 筛选栏
+        JPanel filterBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        historySourceField = new JTextField(10);
+        historyProtocolBox = new JComboBox<>(new String[]{"全部", "RMI", "LDAP", "HTTP"});
+        historyNameField = new JTextField(12);
+        historyTimeBox = new JComboBox<>(HISTORY_TIME_OPTIONS);
+        JButton filterButton = createStyledButton("筛选", e -> runHistoryQuery());
+        historySourceField.addActionListener(e -> runHistoryQuery());
+        historyNameField.addActionListener(e -> runHistoryQuery());
+        filterBar.add(new JLabel("来源:"));
+        filterBar.add(historySourceField);
+        filterBar.add(historyProtocolBox);
+        filterBar.add(new JLabel("名称/路径:"));
+        filterBar.add(historyNameField);
+        filterBar.add(historyTimeBox);
+        filterBar.add(filterButton);
+        panel.add(filterBar, BorderLayout.NORTH);
+
+        // 结果表格
+        historyModel = new DefaultTableModel(new String[]{"时间", "协议", "来源", "名称/路径", "延迟 (ms)"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(historyModel);
+        table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        historyStatusLabel = new JLabel(" ");
+        panel.add(historyStatusLabel, BorderLayout.SOUTH);
+        return panel;
+    }
+
+    /**
+     * 在后台线程执行回连记录查询，结果分批追加到表格
+     */
+    private static void runHistoryQuery() {
+        if (historyWorker != null) {
+            historyWorker.cancel(false);
+        }
+        CallbackHistory.Query query = new CallbackHistory.Query()
+                .source(historySourceField.getText().trim())
+                .name(historyNameField.getText().trim());
+        if (historyProtocolBox.getSelectedIndex() > 0) {
+            query.protocol(CallbackHistory.Protocol.valueOf((String) historyProtocolBox.getSelectedItem()));
+        }
+        long window = HISTORY_TIME_MILLIS[historyTimeBox.getSelectedIndex()];
+        if (window > 0) {
+            query.since(System.currentTimeMillis() - window);
+        }
+        historyModel.setRowCount(0);
+        historyStatusLabel.setText("查询中...");
+
+        historyWorker = new SwingWorker<Integer, CallbackHistory.Row>() {
+            private final long start = System.nanoTime();
+            private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+            @Override
+            protected Integer doInBackground() {
+                return CallbackHistory.search(query, HISTORY_DISPLAY_LIMIT, 500,
+                        batch -> publish(batch.toArray(new CallbackHistory.Row[0])), this::isCancelled);
+            }
+
+            @Override
+            protected void process(List<CallbackHistory.Row> rows) {
+                if (isCancelled()) {
+                    return;
+                }
+                for (CallbackHistory.Row row : rows) {
+                    historyModel.addRow(new Object[]{format.format(new Date(row.timestamp)), row.protocol, row.source, row.name,
+                            row.latencyMicros == CallbackHistory.NO_LATENCY ? "" : CallbackCorrelator.formatMillis(row.latencyMicros)});
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    int total = get();
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    historyStatusLabel.setText("匹配 " + total + " 条，共 " + CallbackHistory.size() + " 条，耗时 " + millis + " ms"
+                            + (total > HISTORY_DISPLAY_LIMIT ? "（仅显示最新 " + HISTORY_DISPLAY_LIMIT + " 条）" : ""));
+                } catch (Exception e) {
+                    historyStatusLabel.setText("查询失败: " + e.getMessage());
+                }
+            }
+        };
+        historyWorker.execute();
+    }
+
     private static JButton createStyledButton(String text, java.awt.event.ActionListener listener) {
         JButton button = new JButton(text);
 //        button.setFont(new Font("Helvetica Neue", Font.PLAIN, 14));
@@ -257,12 +589,16 @@ public class Main {
     }
 
     private static void updateButtonStates() {
-        startRmiButton.setEnabled(!rmiServiceRunning);
+        // 服务运行中时“启动”变为“应用”：按新配置切换端口，新监听器就绪后再排空旧连接
+        startRmiButton.setText(rmiServiceRunning ? "应用" : "启动");
         stopRmiButton.setEnabled(rmiServiceRunning);
-        startLdapButton.setEnabled(!ldapServiceRunning);
+        startLdapButton.setText(ldapServiceRunning ? "应用" : "启动");
         stopLdapButton.setEnabled(ldapServiceRunning);
-        startHttpButton.setEnabled(!httpServiceRunning);
+        startHttpButton.setText(httpServiceRunning ? "应用" : "启动");
         stopHttpButton.setEnabled(httpServiceRunning);
+        boolean recording = JfrEvents.isRecording();
+        startJfrButton.setEnabled(JfrEvents.isAvailable() && !recording);
+        stopJfrButton.setEnabled(recording);
     }
 
     private static void startRmiService() {
@@ -279,8 +615,11 @@ public class Main {
                         updateButtonStates();
                     });
                 } catch (Exception ex) {
+                    boolean running = RmiService.isRunning();
                     SwingUtilities.invokeLater(() -> {
                         ex.printStackTrace();
+                        rmiServiceRunning = running;
+                        updateButtonStates();
                     });
                 }
             });
@@ -317,8 +656,11 @@ public class Main {
                         updateButtonStates();
                     });
                 } catch (Exception ex) {
+                    boolean running = LdapService.isRunning();
                     SwingUtilities.invokeLater(() -> {
                         ex.printStackTrace();
+                        ldapServiceRunning = running;
+                        updateButtonStates();
                     });
                 }
             });
@@ -355,7 +697,10 @@ public class Main {
                         updateButtonStates();
                     });
                 } catch (Exception ex) {
+                    boolean running = HttpFileServer.isRunning();
                     SwingUtilities.invokeLater(() -> {
+                        httpServiceRunning = running;
+                        updateButtonStates();
                     });
                 }
             });
@@ -379,6 +724,26 @@ public class Main {
         });
     }
 
+    private static void startJfrRecording() {
+        executor.submit(() -> {
+            JfrEvents.startRecording();
+            SwingUtilities.invokeLater(Main::updateButtonStates);
+        });
+    }
+
+    private static void stopJfrRecording(Component parent) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File(DEFAULT_HTTP_DIR, "jndi-injector.jfr"));
+        if (fileChooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path destination = fileChooser.getSelectedFile().toPath();
+        executor.submit(() -> {
+            JfrEvents.stopRecording(destination);
+            SwingUtilities.invokeLater(Main::updateButtonStates);
+        });
+    }
+
     private static void stopServices() {
         if (rmiServiceRunning) {
             RmiService.stopRmiService();
@@ -393,8 +758,7 @@ public class Main {
 
     private static void log(String message) {
         SwingUtilities.invokeLater(() -> {
-            logArea.append("[" + java.time.LocalDateTime.now().toString() + "] " + message + "\n");
-            logArea.setCaretPosition(logArea.getDocument().getLength());
+            CustomLogHandler.append(logArea, "[" + java.time.LocalDateTime.now().toString() + "] " + message + "\n");
         });
     }
 }
\ No newline at end of file
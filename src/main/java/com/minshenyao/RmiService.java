@@ -5,11 +5,15 @@ import java.net.MalformedURLException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URL;
+import java.rmi.NoSuchObjectException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.naming.NamingException;
 import javax.naming.Reference;
-import javax.net.ServerSocketFactory;
 import com.sun.jndi.rmi.registry.ReferenceWrapper;
 
 public class RmiService {
@@ -20,15 +24,35 @@ public class RmiService {
     private ServerSocket serverSocket;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private Thread serviceThread;
+    private ExecutorService connectionExecutor;
+    private final ConnectionTracker connections = new ConnectionTracker();
+    private final ReferenceWrapper referenceWrapper;
+    private final byte[] serializedReference;
+    private final String expectedClassPath;
 
-    private RmiService(int port, URL classpathUrl) throws IOException {
+    private RmiService(int port, URL classpathUrl) throws IOException, NamingException {
         this.port = port;
         this.classpathUrl = classpathUrl;
-        this.serverSocket = ServerSocketFactory.getDefault().createServerSocket(port);
+        // 引用对实例内所有查找都相同，导出并序列化一次，查找时直接写出字节
+        this.referenceWrapper = new ReferenceWrapper(new Reference("Foo", classpathUrl.getRef(), classpathUrl.toString()));
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes)) {
+                objectOutputStream.writeObject(referenceWrapper);
+            }
+            this.serializedReference = bytes.toByteArray();
+            this.expectedClassPath = classpathUrl.getRef() == null ? null
+                    : new URL(classpathUrl, classpathUrl.getRef().replace('.', '/').concat(".class")).getPath();
+            this.serverSocket = AdmissionController.serverSocketFactory(connections).createServerSocket(port);
+        } catch (IOException e) {
+            unexportReference();
+            throw e;
+        }
     }
 
     public void start() {
         if (running.compareAndSet(false, true)) {
+            connectionExecutor = ServiceExecutors.newConnectionExecutor("rmi-conn");
             serviceThread = new Thread(this::runService);
             serviceThread.setDaemon(true);
             serviceThread.start();
@@ -38,12 +62,16 @@ public class RmiService {
     }
 
     private void runService() {
-        LOGGER.info("RMI 服务已启动，监听在 0.0.0.0: " + port);
+        LOGGER.info("RMI 服务已启动，监听在 0.0.0.0: " + port + "（" + ServiceExecutors.describe() + "）");
         try {
             while (running.get() && !serverSocket.isClosed()) {
                 try {
                     Socket socket = serverSocket.accept();
-                    handleConnection(socket);
+                    try {
+                        connectionExecutor.execute(() -> handleConnection(socket));
+                    } catch (RejectedExecutionException e) {
+                        socket.close();
+                    }
                 } catch (IOException e) {
                     if (running.get()) {
                         LOGGER.log(Level.WARNING, "接受连接时出错", e);
@@ -57,23 +85,29 @@ public class RmiService {
 
     private void handleConnection(Socket socket) {
         try {
+            JfrEvents.rmiConnectionAccepted(socket.getInetAddress().getHostAddress());
             LOGGER.info("连接来源: " + socket.getRemoteSocketAddress());
             try (
-                    InputStream inputStream = socket.getInputStream();
+                    InputStream inputStream = BufferPool.inputStream(socket.getInputStream(), BufferPool.SMALL);
                     DataInputStream dataInputStream = new DataInputStream(inputStream);
-                    OutputStream outputStream = socket.getOutputStream();
+                    OutputStream outputStream = BufferPool.outputStream(socket.getOutputStream(), BufferPool.SMALL);
                     DataOutputStream dataOutputStream = new DataOutputStream(outputStream)
             ) {
                 // Read the RMI request
                 int operation = dataInputStream.read();
                 if (operation == 0) { // RMI lookup
-                    handleRmiLookup(dataInputStream, dataOutputStream);
+                    handleRmiLookup(socket, dataInputStream, dataOutputStream);
                 } else {
                     LOGGER.warning("不支持的操作: " + operation);
                 }
             }
         } catch (Exception e) {
-            LOGGER.log(Level.WARNING, "错误处理连接", e);
+            if (running.get()) {
+                LOGGER.log(Level.WARNING, "错误处理连接", e);
+            } else {
+                // 排空超时后被强制关闭的连接
+                LOGGER.log(Level.FINE, "连接在服务停止时被关闭", e);
+            }
         } finally {
             try {
                 socket.close();
@@ -83,19 +117,51 @@ public class RmiService {
         }
     }
 
-    private void handleRmiLookup(DataInputStream in, DataOutputStream out) throws Exception {
+    private void handleRmiLookup(Socket socket, DataInputStream in, DataOutputStream out) throws Exception {
+        Object event = JfrEvents.beginRmiLookup();
         String objectName = in.readUTF();
         LOGGER.info("执行 RMI 查找: " + objectName);
+        CallbackHistory.record(CallbackHistory.Protocol.RMI, socket.getInetAddress().getHostAddress(), objectName);
+        HitNotifier.publish(CallbackHistory.Protocol.RMI, socket.getInetAddress().getHostAddress(), objectName);
+        if (expectedClassPath != null) {
+            CallbackCorrelator.recordReferral("RMI", socket.getInetAddress().getHostAddress(), objectName, expectedClassPath);
+        }
 
         out.writeByte(0); // Acknowledge the request
-        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(out)) {
-            ReferenceWrapper referenceWrapper = new ReferenceWrapper(new Reference("Foo", classpathUrl.getRef(), classpathUrl.toString()));
-            objectOutputStream.writeObject(referenceWrapper);
-            objectOutputStream.flush();
-        }
+        out.write(serializedReference);
+        out.flush();
+        JfrEvents.commitRmiLookup(event, socket.getInetAddress().getHostAddress(), objectName, out.size());
     }
 
+    /**
+     * 停止服务：先停止接受新连接，再在排空期限内等待已接受的连接处理完毕，超时后强制关闭
+     */
     public void stop() {
+        stopAccepting();
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdown();
+            if (!connections.awaitIdle(ConnectionTracker.DRAIN_MILLIS)) {
+                LOGGER.warning("RMI 端口 " + port + " 上有 " + connections.active() + " 个连接未在排空期限内结束，强制关闭");
+                connections.closeAll();
+            }
+            connectionExecutor.shutdownNow();
+            connectionExecutor = null;
+            unexportReference();
+            LOGGER.info("RMI 服务已停止（端口 " + port + "）");
+        }
+    }
+
+    private void unexportReference() {
+        try {
+            UnicastRemoteObject.unexportObject(referenceWrapper, true);
+        } catch (NoSuchObjectException ignored) {
+        }
+    }
+
+    /**
+     * 关闭监听套接字，已接受的连接继续处理
+     */
+    private void stopAccepting() {
         if (running.compareAndSet(true, false)) {
             closeServerSocket();
             if (serviceThread != null) {
@@ -107,7 +173,6 @@ public class RmiService {
                 }
                 serviceThread = null;
             }
-            LOGGER.info("RMI 服务已停止");
         }
     }
 
@@ -121,13 +186,28 @@ public class RmiService {
         }
     }
 
+    /**
+     * 启动 RMI 服务；已在运行时切换到新的端口和 URL
+     * <p>
+     * 切换时先启动新的监听器，再在后台排空旧实例，端口不变时只在关闭旧监听套接字到绑定新套接字之间短暂不可用。
+     */
     public static synchronized void startRmiService(URL codebaseUrl, int port) {
         try {
-            if (rmiServiceInstance != null) {
-                stopRmiService();
+            RmiService previous = rmiServiceInstance;
+            if (previous != null && previous.port == port) {
+                // 同一端口不能同时监听，先关闭旧监听套接字
+                previous.stopAccepting();
+                rmiServiceInstance = null;
+                ConnectionTracker.drainInBackground("rmi-drain", previous::stop);
+                previous = null;
+            }
+            RmiService next = new RmiService(port, codebaseUrl);
+            next.start();
+            rmiServiceInstance = next;
+            if (previous != null) {
+                LOGGER.info("RMI 服务切换: 端口 " + previous.port + " -> " + port + "，旧连接在后台排空");
+                ConnectionTracker.drainInBackground("rmi-drain", previous::stop);
             }
-            rmiServiceInstance = new RmiService(port, codebaseUrl);
-            rmiServiceInstance.start();
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "无法启动 RMI 服务", e);
             throw new RuntimeException("无法启动 RMI 服务", e);
@@ -143,6 +223,10 @@ public class RmiService {
         }
     }
 
+    public static synchronized boolean isRunning() {
+        return rmiServiceInstance != null;
+    }
+
     public static synchronized void stopRmiService() {
         if (rmiServiceInstance != null) {
             rmiServiceInstance.stop();
@@ -0,0 +1,56 @@
+package com.minshenyao;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 各服务处理连接所用的执行器
+ * <p>
+ * Java 8 版本使用守护线程的缓存线程池；在 JDK 21+ 上由多版本 JAR 中
+ * META-INF/versions/21 下的同名类替换为虚拟线程执行器。
+ */
+public final class ServiceExecutors {
+
+    private ServiceExecutors() {
+    }
+
+    /**
+     * 创建处理连接的执行器
+     * @param name 线程名前缀
+     */
+    public static ExecutorService newConnectionExecutor(String name) {
+        return Executors.newCachedThreadPool(new DaemonThreadFactory(name));
+    }
+
+    /**
+     * 当前执行器实现的描述，用于日志输出
+     */
+    public static String describe() {
+        return "平台线程池";
+    }
+
+    /**
+     * 当前线程是否为虚拟线程；虚拟线程用完即弃，不适合保存线程本地缓存
+     */
+    public static boolean onVirtualThread() {
+        return false;
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
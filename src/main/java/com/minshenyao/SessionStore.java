@@ -0,0 +1,287 @@
+package com.minshenyao;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 会话快照：配置、计数器和回连记录以紧凑的二进制格式保存，通过内存映射文件读写
+ * <p>
+ * 文件格式（大端序）：
+ * <pre>
+ * int    魔数 "JNDS"
+ * short  版本号
+ * long   保存时间
+ * 配置：  str 恶意类 URL, str HTTP 目录, int RMI 端口, int LDAP 端口, int HTTP 端口
+ * 计数器：long 回连匹配次数, int n, long[n] 延迟样本, long 限流拒绝次数
+ * 回连记录：int n, str[n] 来源字典, int m, str[m] 名称字典,
+ *          int rows, long[rows] 时间, byte[rows] 协议, int[rows] 来源, int[rows] 名称,
+ *          int[rows] 回连延迟（微秒，-1 为未匹配；版本 1 无此列）
+ * str = int 字节长度 + UTF-8 字节
+ * </pre>
+ * 写入先落到临时文件，强制刷盘后原子替换，保存中途退出不会损坏上一次的快照。
+ * 读取时每个长度字段都先与剩余字节数比对，损坏的文件不会导致超大分配；解码出的字典下标、协议和时间顺序
+ * 全部校验通过后才一并应用，任何一项无效都不会改动当前状态。
+ */
+public final class SessionStore {
+    private static final Logger LOGGER = Logger.getLogger(SessionStore.class.getName());
+    private static final int MAGIC = 0x4A4E4453;
+    private static final short VERSION = 2;
+
+    private static volatile Path sessionFile =
+            Paths.get(System.getProperty("user.home"), ".jndi-injector-gui", "session.bin");
+    private static long lastSavedHistorySize = -1;
+    private static long lastSavedMatched = -1;
+    private static long lastSavedRejected = -1;
+    private static Config lastSavedConfig;
+
+    private SessionStore() {
+    }
+
+    /**
+     * 界面上的服务配置
+     */
+    public static final class Config {
+        public final String codebaseUrl;
+        public final String httpDirectory;
+        public final int rmiPort;
+        public final int ldapPort;
+        public final int httpPort;
+
+        public Config(String codebaseUrl, String httpDirectory, int rmiPort, int ldapPort, int httpPort) {
+            this.codebaseUrl = codebaseUrl;
+            this.httpDirectory = httpDirectory;
+            this.rmiPort = rmiPort;
+            this.ldapPort = ldapPort;
+            this.httpPort = httpPort;
+        }
+
+        boolean sameAs(Config other) {
+            return other != null && codebaseUrl.equals(other.codebaseUrl) && httpDirectory.equals(other.httpDirectory)
+                    && rmiPort == other.rmiPort && ldapPort == other.ldapPort && httpPort == other.httpPort;
+        }
+    }
+
+    public static void setSessionFile(Path path) {
+        sessionFile = path;
+    }
+
+    /**
+     * 保存会话；配置、计数器和回连记录自上次保存后均无变化时跳过
+     */
+    public static synchronized void save(Config config) {
+        if (CallbackHistory.size() == lastSavedHistorySize
+                && CallbackCorrelator.getMatchedCount() == lastSavedMatched
+                && AdmissionController.getTotalRejected() == lastSavedRejected
+                && config.sameAs(lastSavedConfig)) {
+            return;
+        }
+        Path target = sessionFile;
+        try {
+            long start = System.nanoTime();
+            CallbackHistory.Export history = CallbackHistory.export();
+            long[] latencies = CallbackCorrelator.exportLatencies();
+            long matched = CallbackCorrelator.getMatchedCount();
+            long rejected = AdmissionController.getTotalRejected();
+
+            byte[] codebase = utf8(config.codebaseUrl);
+            byte[] httpDirectory = utf8(config.httpDirectory);
+            byte[][] sources = utf8(history.sourceValues);
+            byte[][] names = utf8(history.nameValues);
+            int rows = history.timestamps.length;
+            long size = 4 + 2 + 8
+                    + 4 + codebase.length + 4 + httpDirectory.length + 4 * 3
+                    + 8 + 4 + 8L * latencies.length + 8
+                    + 4 + total(sources) + 4 + total(names)
+                    + 4 + rows * (8L + 1 + 4 + 4 + 4);
+
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(MAGIC).putShort(VERSION).putLong(System.currentTimeMillis());
+                putBytes(buffer, codebase);
+                putBytes(buffer, httpDirectory);
+                buffer.putInt(config.rmiPort).putInt(config.ldapPort).putInt(config.httpPort);
+                buffer.putLong(matched).putInt(latencies.length);
+                buffer.asLongBuffer().put(latencies);
+                // 经 Buffer 调用 position(int)，JDK 9+ 编译出的协变返回版本在 Java 8 上不存在
+                ((Buffer) buffer).position(buffer.position() + 8 * latencies.length);
+                buffer.putLong(rejected);
+                putStrings(buffer, sources);
+                putStrings(buffer, names);
+                buffer.putInt(rows);
+                buffer.asLongBuffer().put(history.timestamps);
+                ((Buffer) buffer).position(buffer.position() + 8 * rows);
+                buffer.put(history.protocols);
+                buffer.asIntBuffer().put(history.sources);
+                ((Buffer) buffer).position(buffer.position() + 4 * rows);
+                buffer.asIntBuffer().put(history.names);
+                ((Buffer) buffer).position(buffer.position() + 4 * rows);
+                buffer.asIntBuffer().put(history.latencies);
+                buffer.force();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            lastSavedHistorySize = rows;
+            lastSavedMatched = matched;
+            lastSavedRejected = rejected;
+            lastSavedConfig = config;
+            LOGGER.fine("会话已保存: " + rows + " 条记录, " + size + " 字节, "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException | RuntimeException | LinkageError e) {
+            LOGGER.log(Level.WARNING, "保存会话失败: " + target, e);
+        }
+    }
+
+    /**
+     * 恢复会话：回连记录和计数器直接载入，配置返回给调用方填入界面
+     * @return 保存的配置；文件不存在或无法识别时返回 null
+     */
+    public static synchronized Config restore() {
+        Path source = sessionFile;
+        if (!Files.isRegularFile(source)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long start = System.nanoTime();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 6 || buffer.getInt() != MAGIC) {
+                LOGGER.warning("会话文件格式无法识别: " + source);
+                return null;
+            }
+            short version = buffer.getShort();
+            if (version != 1 && version != VERSION) {
+                LOGGER.warning("不支持的会话文件版本 " + version + ": " + source);
+                return null;
+            }
+            buffer.getLong();
+            String codebase = getString(buffer);
+            String httpDirectory = getString(buffer);
+            Config config = new Config(codebase, httpDirectory, buffer.getInt(), buffer.getInt(), buffer.getInt());
+
+            long matched = buffer.getLong();
+            long[] latencies = new long[length(buffer, 8)];
+            buffer.asLongBuffer().get(latencies);
+            ((Buffer) buffer).position(buffer.position() + 8 * latencies.length);
+            long rejected = buffer.getLong();
+            if (matched < 0 || rejected < 0) {
+                throw new IOException("会话文件已损坏：计数器为负");
+            }
+
+            CallbackHistory.Export history = new CallbackHistory.Export();
+            history.sourceValues = getStrings(buffer);
+            history.nameValues = getStrings(buffer);
+            int rows = length(buffer, version == 1 ? 8 + 1 + 4 + 4 : 8 + 1 + 4 + 4 + 4);
+            history.timestamps = new long[rows];
+            history.protocols = new byte[rows];
+            history.sources = new int[rows];
+            history.names = new int[rows];
+            buffer.asLongBuffer().get(history.timestamps);
+            ((Buffer) buffer).position(buffer.position() + 8 * rows);
+            buffer.get(history.protocols);
+            buffer.asIntBuffer().get(history.sources);
+            ((Buffer) buffer).position(buffer.position() + 4 * rows);
+            buffer.asIntBuffer().get(history.names);
+            history.latencies = new int[rows];
+            if (version == 1) {
+                Arrays.fill(history.latencies, CallbackHistory.NO_LATENCY);
+            } else {
+                ((Buffer) buffer).position(buffer.position() + 4 * rows);
+                buffer.asIntBuffer().get(history.latencies);
+            }
+
+            // 回连记录先校验再整体替换，通过后才写入计数器，损坏的文件不会留下部分恢复的状态
+            if (!CallbackHistory.restore(history)) {
+                LOGGER.warning("已有回连记录，跳过会话中的记录和计数器");
+                return config;
+            }
+            CallbackCorrelator.restore(matched, latencies);
+            AdmissionController.restoreTotalRejected(rejected);
+            lastSavedHistorySize = rows;
+            lastSavedMatched = CallbackCorrelator.getMatchedCount();
+            lastSavedRejected = rejected;
+            lastSavedConfig = config;
+            LOGGER.info("已恢复会话: " + rows + " 条回连记录，耗时 "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return config;
+        } catch (IOException | RuntimeException | LinkageError e) {
+            LOGGER.log(Level.WARNING, "恢复会话失败: " + source, e);
+            return null;
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] utf8(String[] values) {
+        byte[][] result = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = utf8(values[i]);
+        }
+        return result;
+    }
+
+    private static long total(byte[][] values) {
+        long total = 0;
+        for (byte[] value : values) {
+            total += 4 + value.length;
+        }
+        return total;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value.length).put(value);
+    }
+
+    private static void putStrings(ByteBuffer buffer, byte[][] values) {
+        buffer.putInt(values.length);
+        for (byte[] value : values) {
+            putBytes(buffer, value);
+        }
+    }
+
+    /**
+     * 读取长度字段，并确认剩余字节足够容纳 length 个 elementSize 字节的元素
+     */
+    private static int length(ByteBuffer buffer, int elementSize) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || (long) length * elementSize > buffer.remaining()) {
+            throw new IOException("会话文件已损坏：长度 " + length + " 超出剩余 " + buffer.remaining() + " 字节");
+        }
+        return length;
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[length(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String[] getStrings(ByteBuffer buffer) throws IOException {
+        String[] values = new String[length(buffer, 4)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getString(buffer);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,541 @@
+package com.minshenyao;
+
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.SearchScope;
+
+import javax.swing.*;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 浸泡测试：在本机回环上持续压测 RMI、LDAP、HTTP 服务，定期采样资源指标，
+ * 任一指标在测试期间持续上升即判定失败并输出报告
+ * <p>
+ * 日志照常经 {@link CustomLogHandler} 写入一个不显示的日志文本区，以覆盖界面日志的增长。
+ * 每次采样前先读取 GC 计数再触发一次完整 GC，存活堆取 GC 后的已用堆，
+ * 并扣除回连记录按设计保留的部分；采样触发的 GC 不计入 GC 停顿统计。
+ */
+public final class SoakMode {
+    private static final Logger LOGGER = Logger.getLogger(SoakMode.class.getName());
+    private static final int CLIENTS = 4;
+    private static final int TARGET_SAMPLES = 40;
+    private static final long MIN_INTERVAL_MILLIS = 1000;
+    private static final double WARMUP_FRACTION = 0.25;
+    private static final int SOCKET_TIMEOUT_MILLIS = 5000;
+    /**
+     * 每条回连记录的预期占用：列数据 21 字节，加上来源、名称、协议三个倒排表各一项；
+     * 倒排表初始容量 4 且按倍数扩容，每个来源或名称都只出现一次时也不会超过 64 字节
+     */
+    private static final int HISTORY_BYTES_PER_EVENT = 64;
+    private static final String CLASS_NAME = "Exploit";
+
+    private static final int RMI = 0;
+    private static final int LDAP = 1;
+    private static final int HTTP_FILE = 2;
+    private static final int HTTP_LISTING = 3;
+    private static final String[] OPERATION_NAMES = {"RMI", "LDAP", "HTTP 文件", "HTTP 目录"};
+
+    private final long durationMillis;
+    private final AtomicLong[] completed = new AtomicLong[OPERATION_NAMES.length];
+    private final AtomicLong errors = new AtomicLong();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Map<Long, Long> lastThreadBytes = new HashMap<>();
+    private final Map<String, Long> bytesByThread = new HashMap<>();
+    private final List<Metric> metrics = new ArrayList<>();
+    private final Metric liveHeap = new Metric("存活堆（扣除回连记录）", "MB", 16, 0.2);
+    private final Metric allocationPerRequest = new Metric("每请求分配", "KB", 4, 0.5);
+    private final Metric gcPause = new Metric("GC 停顿", "ms/s", 10, 1.0);
+    private final Metric openFiles = new Metric("打开的文件描述符", "", 16, 0.2);
+    private final Metric threadCount = new Metric("线程数", "", 8, 0.2);
+    // 日志区按设计先增长到上限再截断，只检查是否超出上限
+    private final Metric logLines = Metric.bounded("日志行数", "", CustomLogHandler.MAX_LINES + CustomLogHandler.TRIM_SLACK);
+    private final List<double[]> historySamples = new ArrayList<>();
+    private boolean historyOverBudget;
+    private JTextArea logArea;
+    private volatile boolean stopping;
+
+    private SoakMode(long durationMillis) {
+        this.durationMillis = durationMillis;
+        for (int i = 0; i < completed.length; i++) {
+            completed[i] = new AtomicLong();
+        }
+        metrics.add(liveHeap);
+        metrics.add(allocationPerRequest);
+        metrics.add(gcPause);
+        metrics.add(openFiles);
+        metrics.add(threadCount);
+        metrics.add(logLines);
+    }
+
+    /**
+     * 运行浸泡测试
+     * @param durationSeconds 测试时长（秒）
+     * @param reportFile 报告输出文件，为 null 时只输出到标准输出
+     * @return 进程退出码：0 通过，1 未通过，2 无法运行或报告无法写入
+     */
+    public static int run(long durationSeconds, Path reportFile) {
+        SoakMode soak = new SoakMode(TimeUnit.SECONDS.toMillis(durationSeconds));
+        String report;
+        boolean passed;
+        try {
+            passed = soak.execute();
+            report = soak.report(passed);
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "浸泡测试无法运行", e);
+            return 2;
+        }
+        System.out.println(report);
+        if (reportFile != null) {
+            try {
+                Files.write(reportFile, report.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "写入浸泡测试报告失败: " + reportFile, e);
+                return 2;
+            }
+        }
+        return passed ? 0 : 1;
+    }
+
+    private boolean execute() throws Exception {
+        Path root = Files.createTempDirectory("jndi-soak");
+        Files.write(root.resolve(CLASS_NAME + ".class"), new byte[2048]);
+        for (int i = 0; i < 50; i++) {
+            Files.write(root.resolve("file-" + i + ".txt"), ("soak " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        int rmiPort = freePort();
+        int ldapPort = freePort();
+        int httpPort = freePort();
+        String codebase = "http://127.0.0.1:" + httpPort + "/#" + CLASS_NAME;
+
+        installLogArea();
+        // 所有请求都来自本机，关闭按来源限流以免压测流量被拒绝
+        boolean admissionEnabled = AdmissionController.isEnabled();
+        AdmissionController.setEnabled(false);
+        HttpFileServer.startHttpServer(root.toString(), httpPort);
+        LdapService.startLdapService(codebase, ldapPort);
+        RmiService.startRmiService(codebase, rmiPort);
+
+        CountDownLatch done = new CountDownLatch(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            int first = i;
+            Thread client = new Thread(() -> {
+                try {
+                    clientLoop(first, rmiPort, ldapPort, httpPort);
+                } finally {
+                    done.countDown();
+                }
+            }, "soak-client-" + i);
+            client.setDaemon(true);
+            client.start();
+        }
+
+        long interval = Math.max(MIN_INTERVAL_MILLIS, durationMillis / TARGET_SAMPLES);
+        long start = System.currentTimeMillis();
+        long deadline = start + durationMillis;
+        Baseline baseline = takeBaseline();
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(Math.min(interval, Math.max(1, deadline - System.currentTimeMillis())));
+            baseline = sample(baseline, System.currentTimeMillis() - start);
+        }
+
+        stopping = true;
+        done.await(SOCKET_TIMEOUT_MILLIS * 2L, TimeUnit.MILLISECONDS);
+        RmiService.stopRmiService();
+        LdapService.stopLdapService();
+        HttpFileServer.stopHttpServer();
+        AdmissionController.setEnabled(admissionEnabled);
+        deleteRecursively(root);
+
+        boolean passed = errors.get() <= totalCompleted() / 100;
+        passed &= !historyOverBudget;
+        for (Metric metric : metrics) {
+            passed &= !metric.isGrowing();
+        }
+        return passed;
+    }
+
+    private void installLogArea() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(() -> logArea = new JTextArea());
+        Logger rootLogger = Logger.getLogger("");
+        // 保留原有处理器，无法运行、客户端失败等诊断仍输出到控制台；每个请求的 INFO 日志只进入日志区
+        for (Handler handler : rootLogger.getHandlers()) {
+            if (handler.getLevel().intValue() < Level.WARNING.intValue()) {
+                handler.setLevel(Level.WARNING);
+            }
+        }
+        rootLogger.addHandler(new CustomLogHandler(logArea));
+    }
+
+    private void clientLoop(int first, int rmiPort, int ldapPort, int httpPort) {
+        for (long n = first; !stopping; n++) {
+            int operation = (int) (n % OPERATION_NAMES.length);
+            try {
+                switch (operation) {
+                    case RMI:
+                        rmiLookup(rmiPort);
+                        break;
+                    case LDAP:
+                        ldapSearch(ldapPort);
+                        break;
+                    case HTTP_FILE:
+                        httpGet(httpPort, "/" + CLASS_NAME + ".class");
+                        break;
+                    default:
+                        httpGet(httpPort, "/");
+                        break;
+                }
+                completed[operation].incrementAndGet();
+            } catch (Exception e) {
+                if (!stopping && errors.incrementAndGet() <= 10) {
+                    LOGGER.log(Level.WARNING, "浸泡测试请求失败: " + OPERATION_NAMES[operation], e);
+                }
+            }
+        }
+    }
+
+    private static void rmiLookup(int port) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.write(0);
+            out.writeUTF(CLASS_NAME);
+            out.flush();
+            drain(socket.getInputStream());
+        }
+    }
+
+    private static void ldapSearch(int port) throws Exception {
+        try (LDAPConnection connection = new LDAPConnection("127.0.0.1", port)) {
+            connection.search("cn=" + CLASS_NAME, SearchScope.BASE, "(objectClass=*)");
+        }
+    }
+
+    private static void httpGet(int port, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+        connection.setConnectTimeout(SOCKET_TIMEOUT_MILLIS);
+        connection.setReadTimeout(SOCKET_TIMEOUT_MILLIS);
+        if (connection.getResponseCode() != 200) {
+            connection.disconnect();
+            throw new IOException("HTTP 状态码 " + connection.getResponseCode() + ": " + path);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            drain(in);
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) != -1) {
+            // 丢弃响应内容
+        }
+    }
+
+    private Baseline takeBaseline() {
+        Baseline baseline = new Baseline();
+        baseline.nanos = System.nanoTime();
+        baseline.requests = totalCompleted();
+        baseline.gcMillis = totalGcMillis();
+        threadAllocatedDelta();
+        return baseline;
+    }
+
+    private Baseline sample(Baseline previous, long elapsedMillis) throws Exception {
+        long now = System.nanoTime();
+        long requests = totalCompleted();
+        long gcMillis = totalGcMillis();
+        long allocated = threadAllocatedDelta();
+        double seconds = (now - previous.nanos) / 1e9;
+
+        System.gc();
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        int historyRows = CallbackHistory.size();
+        long historyBytes = CallbackHistory.retainedBytes();
+        long live = heapUsed - historyBytes;
+        int[] lines = new int[1];
+        SwingUtilities.invokeAndWait(() -> lines[0] = logArea.getLineCount());
+
+        boolean warm = elapsedMillis >= durationMillis * WARMUP_FRACTION;
+        liveHeap.add(elapsedMillis, live / (1024.0 * 1024.0), warm);
+        if (requests > previous.requests && allocated >= 0) {
+            allocationPerRequest.add(elapsedMillis, allocated / 1024.0 / (requests - previous.requests), warm);
+        }
+        gcPause.add(elapsedMillis, (gcMillis - previous.gcMillis) / seconds, warm);
+        long fds = openFileDescriptors();
+        if (fds >= 0) {
+            openFiles.add(elapsedMillis, fds, warm);
+        }
+        threadCount.add(elapsedMillis, threads.getThreadCount(), warm);
+        logLines.add(elapsedMillis, lines[0], warm);
+        // 回连记录按设计随事件增长，不计入存活堆，而是按每条预算单独检查
+        if (warm) {
+            historySamples.add(new double[]{elapsedMillis, historyRows, historyBytes});
+        }
+        if (historyBytes > historyBudget(historyRows)) {
+            historyOverBudget = true;
+        }
+
+        // 采样触发的 GC 不计入下一个区间
+        Baseline next = new Baseline();
+        next.nanos = System.nanoTime();
+        next.requests = totalCompleted();
+        next.gcMillis = totalGcMillis();
+        threadAllocatedDelta();
+        return next;
+    }
+
+    /**
+     * 自上次调用以来所有线程的分配字节数，同时按线程名累计；不支持时返回 -1
+     */
+    private long threadAllocatedDelta() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = allocation.getThreadAllocatedBytes(ids);
+        java.lang.management.ThreadInfo[] infos = threads.getThreadInfo(ids);
+        Map<Long, Long> current = new HashMap<>();
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] < 0 || infos[i] == null) {
+                continue;
+            }
+            current.put(ids[i], bytes[i]);
+            long delta = bytes[i] - lastThreadBytes.getOrDefault(ids[i], 0L);
+            total += delta;
+            bytesByThread.merge(threadGroupName(infos[i].getThreadName()), delta, Long::sum);
+        }
+        lastThreadBytes.clear();
+        lastThreadBytes.putAll(current);
+        return total;
+    }
+
+    /**
+     * 去掉线程名末尾的编号，同一线程池的线程合并统计
+     */
+    private static String threadGroupName(String name) {
+        int end = name.length();
+        while (end > 0 && (Character.isDigit(name.charAt(end - 1)) || name.charAt(end - 1) == '-')) {
+            end--;
+        }
+        return end == 0 ? name : name.substring(0, end);
+    }
+
+    private static long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long openFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+
+    private long totalCompleted() {
+        long total = 0;
+        for (AtomicLong count : completed) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void deleteRecursively(Path root) {
+        try {
+            Files.walk(root).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "删除临时目录失败: " + root, e);
+        }
+    }
+
+    private String report(boolean passed) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("浸泡测试报告\n");
+        sb.append(String.format("时长: %d s，客户端: %d，%s\n",
+                TimeUnit.MILLISECONDS.toSeconds(durationMillis), CLIENTS, ServiceExecutors.describe()));
+        sb.append("请求: ").append(totalCompleted()).append("（");
+        for (int i = 0; i < OPERATION_NAMES.length; i++) {
+            sb.append(i > 0 ? " / " : "").append(OPERATION_NAMES[i]).append(' ').append(completed[i].get());
+        }
+        sb.append("），错误: ").append(errors.get()).append('\n');
+        sb.append(describeHistory());
+        sb.append(BufferPool.summary()).append("\n\n");
+        sb.append(String.format("%-22s %12s %12s %12s  %s\n", "指标", "预热后起始", "结束", "趋势增量", "结论"));
+        for (Metric metric : metrics) {
+            sb.append(metric.describe()).append('\n');
+        }
+
+        sb.append("\n分配最多的线程:\n");
+        bytesByThread.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(8)
+                .forEach(e -> sb.append(String.format("  %-28s %10.1f MB\n", e.getKey(), e.getValue() / (1024.0 * 1024.0))));
+        sb.append("\n结论: ").append(passed ? "通过" : "失败").append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * 回连记录允许占用的上界：每条 {@value #HISTORY_BYTES_PER_EVENT} 字节，另加一个未写满的列块
+     */
+    private static long historyBudget(int rows) {
+        return (long) rows * HISTORY_BYTES_PER_EVENT + CallbackHistory.CHUNK_BYTES;
+    }
+
+    private String describeHistory() {
+        int rows = CallbackHistory.size();
+        long bytes = CallbackHistory.retainedBytes();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("回连记录: %d 条，占用 %.1f MB，预算 %.1f MB（每条 %d 字节）  %s\n", rows,
+                bytes / (1024.0 * 1024.0), historyBudget(rows) / (1024.0 * 1024.0), HISTORY_BYTES_PER_EVENT,
+                historyOverBudget ? "超出预算" : "正常"));
+        if (historySamples.size() >= 2) {
+            double[] first = historySamples.get(0);
+            double[] last = historySamples.get(historySamples.size() - 1);
+            double seconds = (last[0] - first[0]) / 1000.0;
+            double bytesPerSecond = (last[2] - first[2]) / seconds;
+            sb.append(String.format("  预热后增长 %.0f 条/s、%.1f KB/s，按此速率每天约 %.0f MB（已从存活堆中扣除，单独按预算检查）\n",
+                    (last[1] - first[1]) / seconds, bytesPerSecond / 1024, bytesPerSecond * 86400 / (1024 * 1024)));
+        }
+        return sb.toString();
+    }
+
+    private static final class Baseline {
+        long nanos;
+        long requests;
+        long gcMillis;
+    }
+
+    /**
+     * 一个被监控的指标：预热后的样本做线性回归，整段趋势增量同时超过绝对下限和相对比例时判定为持续上升；
+     * 有上限的指标不看趋势，只要任一样本超过上限即判定为异常
+     */
+    private static final class Metric {
+        final String name;
+        final String unit;
+        final double minGrowth;
+        final double relativeGrowth;
+        final double ceiling;
+        final List<double[]> samples = new ArrayList<>();
+
+        Metric(String name, String unit, double minGrowth, double relativeGrowth) {
+            this(name, unit, minGrowth, relativeGrowth, Double.NaN);
+        }
+
+        private Metric(String name, String unit, double minGrowth, double relativeGrowth, double ceiling) {
+            this.name = name;
+            this.unit = unit;
+            this.minGrowth = minGrowth;
+            this.relativeGrowth = relativeGrowth;
+            this.ceiling = ceiling;
+        }
+
+        static Metric bounded(String name, String unit, double ceiling) {
+            return new Metric(name, unit, 0, 0, ceiling);
+        }
+
+        void add(long elapsedMillis, double value, boolean warm) {
+            if (warm) {
+                samples.add(new double[]{elapsedMillis, value});
+            }
+        }
+
+        /**
+         * 回归直线在预热后整段时间上的增量
+         */
+        double trend() {
+            int n = samples.size();
+            if (n < 3) {
+                return 0;
+            }
+            double sumX = 0;
+            double sumY = 0;
+            for (double[] s : samples) {
+                sumX += s[0];
+                sumY += s[1];
+            }
+            double meanX = sumX / n;
+            double meanY = sumY / n;
+            double numerator = 0;
+            double denominator = 0;
+            for (double[] s : samples) {
+                numerator += (s[0] - meanX) * (s[1] - meanY);
+                denominator += (s[0] - meanX) * (s[0] - meanX);
+            }
+            if (denominator == 0) {
+                return 0;
+            }
+            return numerator / denominator * (samples.get(n - 1)[0] - samples.get(0)[0]);
+        }
+
+        boolean isGrowing() {
+            if (!Double.isNaN(ceiling)) {
+                for (double[] s : samples) {
+                    if (s[1] > ceiling) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (samples.size() < 3) {
+                return false;
+            }
+            double growth = trend();
+            double baseline = Math.abs(samples.get(0)[1]);
+            return growth > minGrowth && growth > baseline * relativeGrowth;
+        }
+
+        String describe() {
+            if (samples.isEmpty()) {
+                return String.format("%-22s %12s %12s %12s  %s", name, "-", "-", "-", "无数据");
+            }
+            String label = unit.isEmpty() ? name : name + " (" + unit + ")";
+            return String.format("%-22s %12.1f %12.1f %+12.1f  %s", label, samples.get(0)[1],
+                    samples.get(samples.size() - 1)[1], trend(), verdict());
+        }
+
+        private String verdict() {
+            if (!isGrowing()) {
+                return "正常";
+            }
+            return Double.isNaN(ceiling) ? "持续上升" : String.format("超出上限 %.0f", ceiling);
+        }
+    }
+}
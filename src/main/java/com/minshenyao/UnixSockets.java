@@ -0,0 +1,28 @@
+package com.minshenyao;
+
+import java.io.IOException;
+import java.nio.channels.ByteChannel;
+import java.nio.file.Path;
+
+/**
+ * UNIX 域套接字连接
+ * <p>
+ * Java 8 版本不支持；在 JDK 21+ 上由多版本 JAR 中 META-INF/versions/21 下的同名类替换。
+ */
+public final class UnixSockets {
+
+    private UnixSockets() {
+    }
+
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 连接到 UNIX 域套接字
+     * @param path 套接字文件路径
+     */
+    public static ByteChannel connect(Path path) throws IOException {
+        throw new IOException("当前 JDK 不支持 UNIX 域套接字: " + path);
+    }
+}
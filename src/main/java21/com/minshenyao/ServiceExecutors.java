@@ -0,0 +1,39 @@
+package com.minshenyao;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+/**
+ * 各服务处理连接所用的执行器（JDK 21+ 版本）
+ * <p>
+ * 每个连接一个虚拟线程，阻塞式套接字读写不再占用平台线程。
+ */
+@IgnoreJRERequirement
+public final class ServiceExecutors {
+
+    private ServiceExecutors() {
+    }
+
+    /**
+     * 创建处理连接的执行器
+     * @param name 线程名前缀
+     */
+    public static ExecutorService newConnectionExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+
+    /**
+     * 当前执行器实现的描述，用于日志输出
+     */
+    public static String describe() {
+        return "虚拟线程";
+    }
+
+    /**
+     * 当前线程是否为虚拟线程；虚拟线程用完即弃，不适合保存线程本地缓存
+     */
+    public static boolean onVirtualThread() {
+        return Thread.currentThread().isVirtual();
+    }
+}
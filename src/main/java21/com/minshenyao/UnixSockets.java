@@ -0,0 +1,38 @@
+package com.minshenyao;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+/**
+ * UNIX 域套接字连接（JDK 21+ 版本）
+ */
+@IgnoreJRERequirement
+public final class UnixSockets {
+
+    private UnixSockets() {
+    }
+
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * 连接到 UNIX 域套接字
+     * @param path 套接字文件路径
+     */
+    public static ByteChannel connect(Path path) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(path));
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+}